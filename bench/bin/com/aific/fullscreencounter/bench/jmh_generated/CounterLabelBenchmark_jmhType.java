@@ -0,0 +1,4 @@
+package com.aific.fullscreencounter.bench.jmh_generated;
+public class CounterLabelBenchmark_jmhType extends CounterLabelBenchmark_jmhType_B3 {
+}
+
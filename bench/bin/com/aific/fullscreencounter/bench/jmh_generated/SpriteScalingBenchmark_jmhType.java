@@ -0,0 +1,4 @@
+package com.aific.fullscreencounter.bench.jmh_generated;
+public class SpriteScalingBenchmark_jmhType extends SpriteScalingBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aific.fullscreencounter.bench.jmh_generated;
+public class StarIndicatorBenchmark_jmhType extends StarIndicatorBenchmark_jmhType_B3 {
+}
+
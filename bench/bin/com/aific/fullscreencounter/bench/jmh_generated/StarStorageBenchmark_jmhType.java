@@ -0,0 +1,4 @@
+package com.aific.fullscreencounter.bench.jmh_generated;
+public class StarStorageBenchmark_jmhType extends StarStorageBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.aific.fullscreencounter.bench.jmh_generated;
+public class ThermometerBenchmark_jmhType extends ThermometerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,112 @@
+package com.aific.fullscreencounter.bench;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.UIManager;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.aific.fullscreencounter.CounterLabel;
+
+
+/**
+ * Benchmarks for formatting, fitting and drawing the counter digits, which
+ * is the bulk of the work done by the counter frame on every update
+ *
+ * @author Peter Macko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterLabelBenchmark {
+
+	@Param({ Screens.HD, Screens.UHD_4K, Screens.UHD_8K })
+	public String screen;
+
+	/// The number of digits of the displayed values
+	@Param({ "1", "4", "9" })
+	public int digits;
+
+	private Font font;
+	private CounterLabel label;
+	private BufferedImage image;
+	private Graphics2D g;
+	private Dimension size;
+	private int first;
+	private int value;
+
+
+	/**
+	 * Create the label and the screen
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		size = Screens.parse(screen);
+		font = new Font(UIManager.getFont("Label.font").getName(),
+				Font.PLAIN, 3 * size.height / 4);
+
+		label = new CounterLabel(font);
+		label.setForeground(Color.WHITE);
+
+		image = Screens.createScreen(size);
+		g = Screens.createGraphics(image);
+
+		first = digits == 1 ? 0 : (int) Math.pow(10, digits - 1);
+		value = first;
+		label.setValue(value);
+		label.paintText(g, 0, 0, size.width, size.height);
+	}
+
+
+	/**
+	 * Release the graphics object
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		g.dispose();
+	}
+
+
+	/**
+	 * Display the next value with the same number of digits, for which the
+	 * glyphs are already fitted
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage setValueAndPaint() {
+
+		value = value == first ? first + 1 : first;
+		label.setValue(value);
+		label.paintText(g, 0, 0, size.width, size.height);
+
+		return image;
+	}
+
+
+	/**
+	 * Display a value in a new label, which needs to fit and rasterize the
+	 * glyphs first, as when the number of digits changes or the font changes
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage fitAndPaint() {
+
+		CounterLabel l = new CounterLabel(font);
+		l.setForeground(Color.WHITE);
+		l.setValue(value);
+		l.paintText(g, 0, 0, size.width, size.height);
+
+		return image;
+	}
+}
@@ -0,0 +1,59 @@
+package com.aific.fullscreencounter.bench;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+
+/**
+ * Helpers shared by the benchmarks
+ *
+ * @author Peter Macko
+ */
+public class Screens {
+
+	/// The screen sizes used as the benchmark parameter
+	public static final String HD = "1920x1080";
+	public static final String UHD_4K = "3840x2160";
+	public static final String UHD_8K = "7680x4320";
+
+
+	/**
+	 * Parse a screen size of the form WIDTHxHEIGHT
+	 *
+	 * @param screen the screen size
+	 * @return the dimension
+	 */
+	public static Dimension parse(String screen) {
+		int x = screen.indexOf('x');
+		return new Dimension(Integer.parseInt(screen.substring(0, x)),
+				Integer.parseInt(screen.substring(x + 1)));
+	}
+
+
+	/**
+	 * Create an opaque image that stands in for the screen
+	 *
+	 * @param size the screen size
+	 * @return the image
+	 */
+	public static BufferedImage createScreen(Dimension size) {
+		return new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+	}
+
+
+	/**
+	 * Create the graphics object for drawing to the given image, set up the
+	 * same way as when drawing to the screen
+	 *
+	 * @param image the image
+	 * @return the graphics object
+	 */
+	public static Graphics2D createGraphics(BufferedImage image) {
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		return g;
+	}
+}
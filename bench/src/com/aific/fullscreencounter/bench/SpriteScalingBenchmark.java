@@ -0,0 +1,103 @@
+package com.aific.fullscreencounter.bench;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.aific.fullscreencounter.Sprites;
+
+
+/**
+ * Benchmarks for scaling the sprites to the sizes used at several screen
+ * sizes
+ *
+ * @author Peter Macko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpriteScalingBenchmark {
+
+	@Param({ Screens.HD, Screens.UHD_4K, Screens.UHD_8K })
+	public String screen;
+
+	private BufferedImage star;
+	private BufferedImage thermometer;
+
+	private int starSize;
+	private int thermometerWidth;
+	private int thermometerHeight;
+
+	private BufferedImage[] stars;
+	private int[] starSizes;
+
+
+	/**
+	 * Load the source images and compute the target sizes the same way as
+	 * the indicators do
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		Dimension size = Screens.parse(screen);
+
+		star = Sprites.load("Star - Normal.png");
+		thermometer = Sprites.load("Goal Thermometer - Empty.png");
+
+		starSize = 2 * (size.height / 25);
+		thermometerHeight = size.height;
+		thermometerWidth = thermometerHeight * thermometer.getWidth() / thermometer.getHeight();
+
+
+		// All star variations, from the smallest to the largest radius
+
+		int minRadius = size.height / 60;
+		int maxRadius = size.height / 25;
+
+		stars = new BufferedImage[maxRadius - minRadius + 1];
+		starSizes = new int[stars.length];
+
+		for (int i = 0; i < stars.length; i++) {
+			stars[i] = star;
+			starSizes[i] = 2 * (minRadius + i);
+		}
+	}
+
+
+	/**
+	 * Scale a single star to the largest variation
+	 *
+	 * @return the scaled image
+	 */
+	@Benchmark
+	public BufferedImage scaleStar() {
+		return Sprites.scale(star, starSize, starSize);
+	}
+
+
+	/**
+	 * Scale all star variations in parallel
+	 *
+	 * @return the scaled images
+	 */
+	@Benchmark
+	public BufferedImage[] scaleAllStars() {
+		return Sprites.scaleAll(stars, starSizes, starSizes);
+	}
+
+
+	/**
+	 * Scale the thermometer
+	 *
+	 * @return the scaled image
+	 */
+	@Benchmark
+	public BufferedImage scaleThermometer() {
+		return Sprites.scale(thermometer, thermometerWidth, thermometerHeight);
+	}
+}
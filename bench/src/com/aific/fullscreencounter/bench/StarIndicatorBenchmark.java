@@ -0,0 +1,154 @@
+package com.aific.fullscreencounter.bench;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.aific.fullscreencounter.StarIndicator;
+
+
+/**
+ * Benchmarks for updating and painting the star indicator, at several
+ * screen sizes and star densities
+ *
+ * @author Peter Macko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarIndicatorBenchmark {
+
+	@Param({ Screens.HD, Screens.UHD_4K, Screens.UHD_8K })
+	public String screen;
+
+	/// The goal value, which is the number of stars when the goal is reached
+	@Param({ "100", "1000", "10000" })
+	public int goal;
+
+	private StarIndicator indicator;
+	private BufferedImage image;
+	private Graphics2D g;
+	private ArrayList<Rectangle> dirty;
+	private int value;
+
+
+	/**
+	 * Create the indicator and the screen, and show half of the stars
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		Dimension size = Screens.parse(screen);
+		indicator = new StarIndicator(0, goal, size);
+		image = Screens.createScreen(size);
+		g = Screens.createGraphics(image);
+		dirty = new ArrayList<Rectangle>();
+
+		value = goal / 2;
+		indicator.setValue(value);
+		indicator.paint(g);
+		indicator.collectDirtyRegions(dirty);
+	}
+
+
+	/**
+	 * Release the graphics object
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		g.dispose();
+	}
+
+
+	/**
+	 * Advance the value by one, wrapping around to half of the goal just
+	 * before reaching it, so that the stars never switch to shining
+	 */
+	private void step() {
+		value++;
+		if (value >= goal) value = goal / 2;
+		indicator.setValue(value);
+	}
+
+
+	/**
+	 * Repaint the dirty regions of the indicator
+	 */
+	private void paintDirtyRegions() {
+
+		dirty.clear();
+		indicator.collectDirtyRegions(dirty);
+
+		for (int i = 0; i < dirty.size(); i++) {
+			Rectangle r = dirty.get(i);
+			g.setClip(r.x, r.y, r.width, r.height);
+			indicator.paint(g);
+		}
+
+		g.setClip(null);
+	}
+
+
+	/**
+	 * Increment the value and collect the dirty regions, which is what
+	 * happens on every key press
+	 *
+	 * @return the number of dirty regions
+	 */
+	@Benchmark
+	public int setValueStep() {
+		step();
+		dirty.clear();
+		indicator.collectDirtyRegions(dirty);
+		return dirty.size();
+	}
+
+
+	/**
+	 * Repaint the entire screen
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage paintFull() {
+		indicator.paint(g);
+		return image;
+	}
+
+
+	/**
+	 * Increment the value and repaint only the dirty regions, as the counter
+	 * frame does
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage paintDirty() {
+		step();
+		paintDirtyRegions();
+		return image;
+	}
+
+
+	/**
+	 * Alternately increment and decrement the value and repaint the dirty
+	 * regions. Removing a star rebuilds the star layer.
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage paintDirtyUndo() {
+		value = value == goal / 2 ? goal / 2 + 1 : goal / 2;
+		indicator.setValue(value);
+		paintDirtyRegions();
+		return image;
+	}
+}
@@ -0,0 +1,97 @@
+package com.aific.fullscreencounter.bench;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.aific.fullscreencounter.Thermometer;
+
+
+/**
+ * Benchmarks for painting the thermometer at several screen sizes
+ *
+ * @author Peter Macko
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThermometerBenchmark {
+
+	@Param({ Screens.HD, Screens.UHD_4K, Screens.UHD_8K })
+	public String screen;
+
+	private Thermometer thermometer;
+	private BufferedImage image;
+	private Graphics2D g;
+	private int width;
+	private int height;
+	private int value;
+
+
+	/**
+	 * Create the thermometer and the screen
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		Dimension size = Screens.parse(screen);
+		thermometer = new Thermometer(0, 100, size.height);
+
+		width = thermometer.getPreferredSize().width;
+		height = size.height;
+		thermometer.setSize(width, height);
+
+		image = Screens.createScreen(size);
+		g = Screens.createGraphics(image);
+
+		value = 50;
+		thermometer.setValue(value);
+	}
+
+
+	/**
+	 * Release the graphics object
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		g.dispose();
+	}
+
+
+	/**
+	 * Paint the entire thermometer, which is what paintComponent does
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage paintFull() {
+		thermometer.paintIndicator(g, width, height);
+		return image;
+	}
+
+
+	/**
+	 * Step the value and repaint a band in the middle of the thermometer,
+	 * one step of the goal tall, as a repaint after a key press does
+	 *
+	 * @return the image
+	 */
+	@Benchmark
+	public BufferedImage paintStep() {
+
+		value = value == 50 ? 51 : 50;
+		thermometer.setValue(value);
+
+		g.setClip(0, height / 2, width, Math.max(1, height / 100));
+		thermometer.paintIndicator(g, width, height);
+		g.setClip(null);
+
+		return image;
+	}
+}
@@ -0,0 +1,152 @@
+package com.aific.fullscreencounter;
+
+
+/**
+ * A fixed-timestep animation clock with a frame time budget. The animation
+ * advances in steps of a fixed length no matter how often the frames are
+ * drawn, so it runs at the same speed even if some frames are late. The
+ * scheduler also keeps a moving average of the frame times, and lowers the
+ * animation density, which is the fraction of the elements that should be
+ * animated, while the frames take longer than the budget. The density
+ * recovers slowly once the frames are well within the budget again.
+ *
+ * @author Peter Macko
+ */
+public class AnimationScheduler {
+
+	/// The maximum number of steps to catch up in a single frame; the time
+	/// beyond that is dropped, so that a long pause does not cause a burst
+	private static final int MAX_STEPS = 4;
+
+	/// The number of frames between two density adjustments, so that the
+	/// average frame time can react to the previous adjustment
+	private static final int ADJUST_INTERVAL = 30;
+
+	/// The lowest density
+	private static final double MIN_DENSITY = 0.05;
+
+	/// The density increase when the frames are well within the budget
+	private static final double DENSITY_INCREASE = 0.1;
+
+	private long step;
+	private long budget;
+
+	/// The time of the last step (System.nanoTime), or 0 if not started
+	private long lastStep;
+
+	/// The moving average of the frame times in nanoseconds
+	private double averageFrameTime;
+
+	/// The number of frames since the last density adjustment
+	private int framesSinceAdjust;
+
+	private double density;
+
+
+	/**
+	 * Create an instance of class AnimationScheduler
+	 *
+	 * @param step the length of a step in nanoseconds
+	 * @param budget the frame time budget in nanoseconds
+	 */
+	public AnimationScheduler(long step, long budget) {
+
+		if (step <= 0) throw new IllegalArgumentException("The step must be positive");
+
+		this.step = step;
+		this.budget = budget;
+		this.lastStep = 0;
+		this.averageFrameTime = 0;
+		this.framesSinceAdjust = 0;
+		this.density = 1;
+	}
+
+
+	/**
+	 * Get the length of a step
+	 *
+	 * @return the length in nanoseconds
+	 */
+	public long getStep() {
+		return step;
+	}
+
+
+	/**
+	 * Get the time of the next step
+	 *
+	 * @return the time (System.nanoTime), or 0 if not started
+	 */
+	public long getNextStep() {
+		return lastStep == 0 ? 0 : lastStep + step;
+	}
+
+
+	/**
+	 * Get the number of steps the animation should advance by
+	 *
+	 * @param now the current time (System.nanoTime)
+	 * @return the number of steps, which can be 0
+	 */
+	public int advance(long now) {
+
+		if (lastStep == 0) {
+			lastStep = now;
+			return 0;
+		}
+
+		long n = (now - lastStep) / step;
+		if (n <= 0) return 0;
+
+		if (n > MAX_STEPS) {
+			lastStep = now;
+			return MAX_STEPS;
+		}
+
+		lastStep += n * step;
+		return (int) n;
+	}
+
+
+	/**
+	 * Record the time it took to draw a frame, and adjust the density
+	 *
+	 * @param nanos the frame time in nanoseconds
+	 */
+	public void recordFrameTime(long nanos) {
+
+		averageFrameTime = averageFrameTime == 0 ? nanos
+				: averageFrameTime + (nanos - averageFrameTime) / 8;
+
+		if (++framesSinceAdjust < ADJUST_INTERVAL) return;
+
+		if (averageFrameTime > budget) {
+			density = Math.max(MIN_DENSITY, density / 2);
+			framesSinceAdjust = 0;
+		}
+		else if (averageFrameTime < budget / 2 && density < 1) {
+			density = Math.min(1, density + DENSITY_INCREASE);
+			framesSinceAdjust = 0;
+		}
+	}
+
+
+	/**
+	 * Get the animation density
+	 *
+	 * @return the fraction of the elements to animate, between 0 and 1
+	 */
+	public double getDensity() {
+		return density;
+	}
+
+
+	/**
+	 * Get the moving average of the frame times
+	 *
+	 * @return the average frame time in nanoseconds
+	 */
+	public long getAverageFrameTime() {
+		return (long) averageFrameTime;
+	}
+}
@@ -2,6 +2,8 @@ package com.aific.fullscreencounter;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.List;
 
 
 /**
@@ -28,6 +30,26 @@ public interface BackgroundIndicator {
 	public void setBackground(Color color);
 	
 	
+	/**
+	 * Advance the animation of the indicator, if it has any
+	 * 
+	 * @param steps the number of fixed time steps to advance by
+	 * @param density the fraction of the elements to animate, between 0 and 1
+	 * @return true if the indicator is animated and needs more frames
+	 */
+	public boolean animate(int steps, double density);
+	
+	
+	/**
+	 * Collect the regions that changed since the last call, and then forget
+	 * them. The rectangles may be reused by the indicator, so they are valid
+	 * only until the next call to setValue() or animate().
+	 * 
+	 * @param regions the list to which to add the changed regions
+	 */
+	public void collectDirtyRegions(List<Rectangle> regions);
+	
+	
 	/**
 	 * Paint
 	 * 
@@ -0,0 +1,520 @@
+package com.aific.fullscreencounter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.swing.SwingUtilities;
+
+
+/**
+ * Listens for counter commands over TCP and UDP on the same port, using a
+ * single thread with a selector. A command is a line of text:
+ *
+ * <ul>
+ * <li><code>+</code> or <code>+N</code> &ndash; increment the counter by one or by N</li>
+ * <li><code>-</code> or <code>-N</code> &ndash; decrement the counter by one or by N</li>
+ * <li><code>=N</code> &ndash; set the counter to N</li>
+ * </ul>
+ *
+ * <p>A TCP client can send any number of commands over a connection, and
+ * a UDP datagram can contain one or more commands. Invalid lines are
+ * ignored.</p>
+ *
+ * <p>The commands are accumulated into a batch, and the batch is handed to
+ * the handler on the event dispatch thread, so that a burst of commands
+ * results in a single display update. Since a decrement stops at zero, the
+ * batch keeps the commands in order, and it merges only the consecutive
+ * commands in the same direction.</p>
+ *
+ * @author Peter Macko
+ */
+public class CommandListener {
+
+	/// The maximum length of a command line
+	private static final int MAX_LINE_LENGTH = 64;
+
+	/// The size of the receive buffers
+	private static final int BUFFER_SIZE = 4096;
+
+	/// The requested size of the socket receive buffer for the datagrams, so
+	/// that bursts are not dropped while the thread is busy
+	private static final int DATAGRAM_RECEIVE_BUFFER_SIZE = 1 << 20;
+
+
+	/**
+	 * The receiver of the batched commands
+	 */
+	public interface Handler {
+
+		/**
+		 * Apply a batch of commands. This is called on the event dispatch
+		 * thread.
+		 *
+		 * @param set true if the batch starts by setting the counter
+		 * @param value the value to set the counter to, if set is true
+		 * @param deltas the increments (positive) and the decrements
+		 *               (negative) to apply afterwards one by one, in order
+		 * @param count the number of deltas
+		 */
+		public void applyCommands(boolean set, int value, long[] deltas, int count);
+	}
+
+
+	private Handler handler;
+	private InetSocketAddress address;
+
+	private Selector selector;
+	private ServerSocketChannel server;
+	private DatagramChannel datagrams;
+	private ByteBuffer datagramBuffer;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	/// The batch of commands that has not been handed to the handler yet
+	private final Object batchLock = new Object();
+	private boolean batchSet;
+	private int batchValue;
+	private long[] batchDeltas;
+	private int batchCount;
+	private boolean batchEmpty;
+	private boolean batchPosted;
+
+	/// The task that hands the batch to the handler on the EDT
+	private Runnable applyTask;
+
+	/// The copy of the batch deltas that is handed to the handler
+	private long[] applyDeltas;
+
+	/// The parsing state of the command that is being parsed
+	private int parseCommand;
+	private long parseNumber;
+	private boolean parseDigits;
+	private boolean parseValid;
+
+
+	/**
+	 * The state of a TCP connection
+	 */
+	private static class Connection {
+
+		/// The bytes received but not parsed yet
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+
+	/**
+	 * Create an instance of class CommandListener
+	 *
+	 * @param address the address to listen on; use port 0 to pick any
+	 *                free port
+	 * @param handler the handler of the commands
+	 */
+	public CommandListener(InetSocketAddress address, Handler handler) {
+
+		this.address = address;
+		this.handler = handler;
+
+		batchDeltas = new long[16];
+		batchCount = 0;
+		batchEmpty = true;
+		batchPosted = false;
+		applyDeltas = new long[16];
+
+		applyTask = new Runnable() {
+			@Override
+			public void run() {
+				applyBatch();
+			}
+		};
+	}
+
+
+	/**
+	 * Open the sockets and start the listener thread
+	 *
+	 * @throws IOException if the sockets cannot be opened
+	 */
+	public void start() throws IOException {
+
+		if (thread != null) throw new IllegalStateException("Already started");
+
+		selector = Selector.open();
+
+		try {
+			server = ServerSocketChannel.open();
+			server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			server.bind(address);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+
+			datagrams = DatagramChannel.open();
+			datagrams.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			datagrams.setOption(StandardSocketOptions.SO_RCVBUF, DATAGRAM_RECEIVE_BUFFER_SIZE);
+			datagrams.bind(new InetSocketAddress(address.getAddress(), getLocalPort()));
+			datagrams.configureBlocking(false);
+			datagrams.register(selector, SelectionKey.OP_READ);
+			datagramBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+
+		running = true;
+		thread = new Thread("Command Listener") {
+			@Override
+			public void run() {
+				listen();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Stop the listener thread and close all connections
+	 */
+	public void stop() {
+
+		if (thread == null) return;
+
+		running = false;
+		selector.wakeup();
+
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		thread = null;
+	}
+
+
+	/**
+	 * Get the port the listener is bound to
+	 *
+	 * @return the port
+	 */
+	public int getLocalPort() {
+		return server.socket().getLocalPort();
+	}
+
+
+	/**
+	 * The body of the listener thread
+	 */
+	private void listen() {
+
+		try {
+			while (running) {
+
+				selector.select();
+				if (!running) break;
+
+				boolean received = false;
+
+				Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					SelectionKey key = i.next();
+					i.remove();
+
+					try {
+						if (!key.isValid()) continue;
+
+						if (key.isAcceptable()) {
+							accept();
+						}
+						else if (key.channel() == datagrams) {
+							received |= receiveDatagrams();
+						}
+						else if (key.isReadable()) {
+							received |= read(key);
+						}
+					}
+					catch (IOException e) {
+
+						// Drop the connection, but keep receiving the datagrams
+
+						if (key.channel() != datagrams) {
+							key.cancel();
+							key.channel().close();
+						}
+						else {
+							System.err.println("Cannot receive a command: " + e.getMessage());
+						}
+					}
+				}
+
+
+				// Hand everything received in this round to the EDT at once
+
+				if (received) postBatch();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("The command listener stopped: " + e.getMessage());
+		}
+		finally {
+			close();
+		}
+	}
+
+
+	/**
+	 * Close the selector and all channels
+	 */
+	private void close() {
+
+		if (selector != null) {
+			for (SelectionKey key : selector.keys()) {
+				try {
+					key.channel().close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+			try {
+				selector.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+		}
+
+		try {
+			if (server != null) server.close();
+			if (datagrams != null) datagrams.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+
+
+	/**
+	 * Accept a new TCP connection
+	 *
+	 * @throws IOException on error
+	 */
+	private void accept() throws IOException {
+
+		SocketChannel channel = server.accept();
+		if (channel == null) return;
+
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.register(selector, SelectionKey.OP_READ, new Connection());
+	}
+
+
+	/**
+	 * Read the commands from a TCP connection
+	 *
+	 * @param key the selection key of the connection
+	 * @return true if any commands were received
+	 * @throws IOException on error
+	 */
+	private boolean read(SelectionKey key) throws IOException {
+
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer buffer = ((Connection) key.attachment()).buffer;
+
+		int n = channel.read(buffer);
+		if (n < 0) {
+			key.cancel();
+			channel.close();
+			return false;
+		}
+
+
+		// Parse the complete lines and keep the rest for later
+
+		buffer.flip();
+		boolean received = false;
+
+		int start = buffer.position();
+		for (int p = start; p < buffer.limit(); p++) {
+			if (buffer.get(p) == '\n') {
+				received |= parse(buffer, start, p);
+				start = p + 1;
+			}
+		}
+
+		buffer.position(start);
+		if (buffer.remaining() > MAX_LINE_LENGTH) buffer.position(buffer.limit());
+		buffer.compact();
+
+		return received;
+	}
+
+
+	/**
+	 * Receive and parse all pending UDP datagrams
+	 *
+	 * @return true if any commands were received
+	 * @throws IOException on error
+	 */
+	private boolean receiveDatagrams() throws IOException {
+
+		boolean received = false;
+
+		while (true) {
+			datagramBuffer.clear();
+			if (datagrams.receive(datagramBuffer) == null) break;
+			datagramBuffer.flip();
+
+			int start = 0;
+			for (int p = 0; p <= datagramBuffer.limit(); p++) {
+				if (p == datagramBuffer.limit() || datagramBuffer.get(p) == '\n') {
+					if (p > start) received |= parse(datagramBuffer, start, p);
+					start = p + 1;
+				}
+			}
+		}
+
+		return received;
+	}
+
+
+	/**
+	 * Parse a single command and add it to the batch
+	 *
+	 * @param buffer the buffer
+	 * @param from the index of the first byte of the command
+	 * @param to the index after the last byte of the command
+	 * @return true if the command was valid
+	 */
+	private boolean parse(ByteBuffer buffer, int from, int to) {
+
+		parseCommand = 0;
+		parseNumber = 0;
+		parseDigits = false;
+		parseValid = true;
+
+		for (int i = from; i < to && parseValid; i++) {
+			int c = buffer.get(i);
+
+			if (c == ' ' || c == '\t' || c == '\r') continue;
+
+			if (parseCommand == 0) {
+				if (c == '+' || c == '-' || c == '=') {
+					parseCommand = c;
+				}
+				else {
+					parseValid = false;
+				}
+			}
+			else if (c >= '0' && c <= '9') {
+				parseNumber = 10 * parseNumber + (c - '0');
+				parseDigits = true;
+				if (parseNumber > Integer.MAX_VALUE) parseValid = false;
+			}
+			else {
+				parseValid = false;
+			}
+		}
+
+		if (!parseValid || parseCommand == 0) return false;
+
+		synchronized (batchLock) {
+			switch (parseCommand) {
+			case '+':
+				addDelta(parseDigits ? parseNumber : 1);
+				break;
+			case '-':
+				addDelta(-(parseDigits ? parseNumber : 1));
+				break;
+			case '=':
+				if (!parseDigits) return false;
+				batchSet = true;
+				batchValue = (int) parseNumber;
+				batchCount = 0;
+				break;
+			default:
+				return false;
+			}
+			batchEmpty = false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Add an increment or a decrement to the batch, merging it with the
+	 * previous one if it is in the same direction; this must be called
+	 * while holding the batch lock
+	 *
+	 * @param delta the increment (positive) or the decrement (negative)
+	 */
+	private void addDelta(long delta) {
+
+		if (delta == 0) return;
+
+		if (batchCount > 0 && (batchDeltas[batchCount - 1] > 0) == (delta > 0)) {
+			batchDeltas[batchCount - 1] += delta;
+			return;
+		}
+
+		if (batchCount == batchDeltas.length) {
+			batchDeltas = Arrays.copyOf(batchDeltas, 2 * batchCount);
+		}
+
+		batchDeltas[batchCount++] = delta;
+	}
+
+
+	/**
+	 * Post the batch to the EDT, unless it is already posted
+	 */
+	private void postBatch() {
+
+		synchronized (batchLock) {
+			if (batchPosted || batchEmpty) return;
+			batchPosted = true;
+		}
+
+		SwingUtilities.invokeLater(applyTask);
+	}
+
+
+	/**
+	 * Hand the batch to the handler; this runs on the EDT
+	 */
+	private void applyBatch() {
+
+		boolean set;
+		int value;
+		int count;
+
+		synchronized (batchLock) {
+			set = batchSet;
+			value = batchValue;
+			count = batchCount;
+
+			if (applyDeltas.length < count) applyDeltas = new long[batchDeltas.length];
+			System.arraycopy(batchDeltas, 0, applyDeltas, 0, count);
+
+			batchSet = false;
+			batchCount = 0;
+			batchEmpty = true;
+			batchPosted = false;
+		}
+
+		handler.applyCommands(set, value, applyDeltas, count);
+	}
+}
@@ -33,6 +33,16 @@ package com.aific.fullscreencounter;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.*;
 
@@ -42,7 +52,8 @@ import javax.swing.*;
  * 
  * @author Peter Macko
  */
-public class CounterFrame extends JFrame implements KeyListener {
+public class CounterFrame extends JFrame
+		implements KeyListener, CommandListener.Handler, CounterModel.Listener {
 
 	/// Serial version UID
 	private static final long serialVersionUID = 1L;
@@ -73,6 +84,9 @@ public class CounterFrame extends JFrame implements KeyListener {
 	/// The initial counter value
 	private int startValue;
 	
+	/// The counter value to start counting from (the start value unless resuming)
+	private int initialValue;
+	
 	/// The goal counter value (the cutoff for the enhanced counter colors)
 	private int goalVaue;
 	
@@ -100,17 +114,55 @@ public class CounterFrame extends JFrame implements KeyListener {
 	/// The "goal reached" announcement text
 	private String goalReachedText;
 	
+	/// The goal graphical progress indicator type
+	private GraphicalIndicatorEnum indicator;
+	
+	/// The renderer, which also owns the indicators
+	private CounterRenderer renderer;
+	
 	/// The goal graphical progress indicator
 	private GraphicalIndicator graphicalIndicator;
 	
 	/// The goal graphical indicator that paints in the background
 	private BackgroundIndicator backgroundIndicator;
 	
+	/// The panel that holds the graphical indicator once it is ready, or
+	/// null if there is no graphical indicator
+	private JPanel indicatorPanel;
+	
+	/// The thread that loads and scales the images of the indicators
+	private ExecutorService preparer;
+	
+	/// The task that installs the prepared indicators on the EDT
+	private Runnable indicatorsReadyTask;
+	
+	/// The timer that fades the indicators in, or null if not fading
+	private javax.swing.Timer fadeTimer;
+	
+	/// The opacity of the background indicator while it fades in
+	private float backgroundIndicatorAlpha;
+	
+	/// The timer that animates the background indicator, or null if none
+	private javax.swing.Timer animationTimer;
+	
+	/// Whether an animation step or a cached frame is being painted, which
+	/// is not counted as a frame
+	private boolean paintingAnimation;
+	
+	/// The crossfade between the palettes, or null if none is running
+	private Crossfade crossfade;
+	
+	/// The timer that advances the crossfade
+	private javax.swing.Timer crossfadeTimer;
+	
+	/// Whether the cached frames of the crossfade were lost
+	private boolean crossfadeLost;
+	
 	/// The panel with the labels
 	JPanel labelPanel;
 	
 	/// The counter label
-	private JLabel label;
+	private CounterLabel label;
 	
 	/// The counter label
 	private JLabel topLabel;
@@ -118,14 +170,91 @@ public class CounterFrame extends JFrame implements KeyListener {
 	/// The counter label
 	private JLabel bottomLabel;
 	
-	/// The current counter value
-	private int counter;
+	/// The counter, which can be changed from any thread
+	private CounterModel model;
+	
+	/// The task that requests a display update on the EDT
+	private Runnable requestRenderTask;
+	
+	/// The counter value that is currently displayed
+	private int displayedCounter;
+	
+	/// The timer that displays the latest counter value after a key press,
+	/// so that the display is updated at most once per screen refresh
+	private javax.swing.Timer renderTimer;
+	
+	/// The minimum time between two display updates in nanoseconds
+	private long frameInterval;
+	
+	/// The time of the last display update (System.nanoTime)
+	private long lastRenderTime;
+	
+	/// Whether to render actively using page flipping instead of through Swing
+	private boolean activeRendering;
+	
+	/// The active rendering thread
+	private Thread renderThread;
+	
+	/// Whether the active rendering thread should keep running
+	private volatile boolean renderThreadRunning;
+	
+	/// The lock for signaling the active rendering thread
+	private final Object renderLock = new Object();
+	
+	/// Whether the active rendering thread should render a new frame
+	private boolean renderRequested;
+	
+	/// Whether to show the counter on all displays
+	private boolean multiDisplay;
+	
+	/// The displays when showing the counter on all of them, or null
+	private ArrayList<DisplayOutput> outputs;
+	
+	/// The display with this window
+	private DisplayOutput primaryOutput;
+	
+	/// The shared frames, one per unique display resolution, with their
+	/// renderers, and the index of the frame shown on each display
+	private ArrayList<CounterRenderer> frameRenderers;
+	private ArrayList<BufferedImage> frameImages;
+	private int[] outputFrames;
+	
+	/// The time of the earliest key press that is not yet displayed
+	/// (System.nanoTime), or 0 if none; it is taken from the time the key
+	/// event was created, so that it includes the time spent in the event
+	/// queue
+	private final AtomicLong inputTime = new AtomicLong();
+	
+	/// The time of the earliest key press included in the display update
+	/// that is waiting to be painted by Swing, or 0 if none
+	private long renderedInputTime;
+	
+	/// The latencies from a key press until its frame is painted
+	private TimeHistogram latencyHistogram;
+	
+	/// The times it takes to paint a frame
+	private TimeHistogram frameTimeHistogram;
+	
+	/// The timer that refreshes the statistics overlay, or null if hidden
+	private javax.swing.Timer hudTimer;
+	
+	/// The journal of the counter values, or null if none
+	private CounterJournal journal;
+	
+	/// The listener for the counter commands from the network, or null if none
+	private CommandListener commandListener;
 	
 	/// The default font
 	private Font defaultFont;
 	
 	/// The screen size
 	private Dimension screenSize;
+	
+	/// The regions of the background indicator that need to be repainted
+	private ArrayList<Rectangle> dirtyRegions;
+	
+	/// Whether the goal colors are currently in use (null if no colors set yet)
+	private Boolean goalPalette;
 
 
 	/**
@@ -153,6 +282,7 @@ public class CounterFrame extends JFrame implements KeyListener {
 		super(title);
 		
 		this.startValue = startValue;
+		this.initialValue = startValue;
 		this.goalVaue = goalValue;
 		
 		this.normalAlpha = normalAlpha;
@@ -168,10 +298,16 @@ public class CounterFrame extends JFrame implements KeyListener {
 		this.goalReachedText = goalReachedText;
 		if (this.goalReachedText == null) this.goalReachedText = "";
 		
+		this.indicator = indicator;
+		
 		
 		// Initialize
 		
-		counter = -1;
+		model = new CounterModel(Math.max(0, startValue));
+		displayedCounter = -1;
+		dirtyRegions = new ArrayList<Rectangle>();
+		latencyHistogram = new TimeHistogram();
+		frameTimeHistogram = new TimeHistogram();
 		screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		
 		
@@ -179,6 +315,20 @@ public class CounterFrame extends JFrame implements KeyListener {
 		
 		addKeyListener(this);
 		
+		requestRenderTask = new Runnable() {
+			@Override
+			public void run() {
+				requestRender();
+			}
+		};
+		
+		indicatorsReadyTask = new Runnable() {
+			@Override
+			public void run() {
+				indicatorsReady();
+			}
+		};
+		
 		
 		// Initialize the window
 
@@ -188,16 +338,42 @@ public class CounterFrame extends JFrame implements KeyListener {
 		setBackground(Color.BLACK);
 		
 		
+		// The display refresh rate
+		
+		GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+		
+		int refreshRate = gd.getDisplayMode().getRefreshRate();
+		if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) refreshRate = 60;
+		frameInterval = 1000000000L / refreshRate;
+		lastRenderTime = System.nanoTime() - frameInterval;
+		
+		
+		// Create the renderer, and prepare the indicators in the background,
+		// so that the counter can be shown right away with just the digits
+		
+		preparer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Counter Preparation");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		renderer = createRenderer(screenSize);
+		
+		graphicalIndicator = null;
+		backgroundIndicator = null;
+		backgroundIndicatorAlpha = 1;
+		
+		
 		// Create the label
 		
-		label = new JLabel("", SwingConstants.CENTER);
+		defaultFont = renderer.getDigitFont();
+		
+		label = new CounterLabel(defaultFont);
 		label.setForeground(Color.WHITE);
 		label.setBackground(Color.BLACK);
-		label.setOpaque(false);
-		
-		defaultFont = new Font(label.getFont().getName(),
-				Font.PLAIN, (int) (this.fontSizeScale * 3 * screenSize.height / 4));
-		label.setFont(defaultFont);
 		
 		
 		// The top and bottom labels
@@ -211,10 +387,14 @@ public class CounterFrame extends JFrame implements KeyListener {
 		bottomLabel.setForeground(Color.WHITE);
 		bottomLabel.setBackground(Color.BLACK);
 
-		Font f = new Font(label.getFont().getName(),
-				Font.PLAIN, 1 * screenSize.height / 8);
+		Font f = renderer.getLabelFont();
 		topLabel.setFont(f);
 		bottomLabel.setFont(f);
+		
+		// Keep the height of the top label when it shows the statistics
+		// overlay in a smaller font
+		
+		topLabel.setPreferredSize(new Dimension(0, topLabel.getPreferredSize().height));
 
 		
 		// Create the JPanel
@@ -237,40 +417,35 @@ public class CounterFrame extends JFrame implements KeyListener {
 			@Override
 			public void paint(Graphics g) {
 				
-				if (backgroundIndicator != null) {
+				long start = System.nanoTime();
+				
+				if (backgroundIndicator != null && backgroundIndicatorAlpha < 1) {
+					g.setColor(label.getBackground());
+					g.fillRect(0, 0, getWidth(), getHeight());
+					Graphics2D g2 = (Graphics2D) g.create();
+					try {
+						g2.setComposite(AlphaComposite.SrcOver.derive(backgroundIndicatorAlpha));
+						backgroundIndicator.paint(g2);
+					}
+					finally {
+						g2.dispose();
+					}
+				}
+				else if (backgroundIndicator != null) {
 					backgroundIndicator.paint((Graphics2D) g);
 				}
 				
 				super.paint(g);
+				
+				if (!paintingAnimation) {
+					frameCompleted(start, renderedInputTime);
+					renderedInputTime = 0;
+				}
 			}
 
 		};
 		
 		
-		// The graphical indicator
-		
-		graphicalIndicator = null;
-		backgroundIndicator = null;
-		
-		switch (indicator) {
-		case THERMOMETER:
-			graphicalIndicator = new Thermometer(startValue, goalValue, screenSize.height);
-			break;
-		case STARS:
-			backgroundIndicator = new StarIndicator(labelPanel, startValue, goalValue, screenSize);
-			break;
-		case NONE:
-			break;
-		default:
-			break;
-		}
-		
-		if (graphicalIndicator != null) {
-			graphicalIndicator.setBackground(Color.BLACK);
-			graphicalIndicator.setOpaque(true);
-		}
-
-		
 		// Set the components
 		
 		labelPanel.setBackground(getBackground());
@@ -279,16 +454,67 @@ public class CounterFrame extends JFrame implements KeyListener {
 		labelPanel.add(topLabel, BorderLayout.NORTH);
 		labelPanel.add(bottomLabel, BorderLayout.SOUTH);
 		
+		// Reserve the room for the graphical indicator, so that the digits do
+		// not move when it appears
+		
+		if (renderer.getIndicatorWidth() > 0) {
+			indicatorPanel = new JPanel(new BorderLayout());
+			indicatorPanel.setBackground(Color.BLACK);
+			indicatorPanel.setPreferredSize(new Dimension(renderer.getIndicatorWidth(), 0));
+		}
+		
 		getContentPane().setLayout(new BorderLayout());
 		getContentPane().add(labelPanel, BorderLayout.CENTER);
-		if (graphicalIndicator != null) getContentPane().add(graphicalIndicator, BorderLayout.WEST);
+		if (indicatorPanel != null) getContentPane().add(indicatorPanel, BorderLayout.WEST);
 		
 		pack();
 		
 		
 		// Full screen
 
-		GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+		renderTimer = new javax.swing.Timer(0, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				render();
+			}
+		});
+		renderTimer.setRepeats(false);
+		
+		crossfadeTimer = new javax.swing.Timer((int) Math.max(1, frameInterval / 1000000L), new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				crossfadeStep();
+			}
+		});
+		
+		
+		// The glass pane shows the crossfade between the palettes; it is
+		// opaque, so that Swing does not paint the components underneath it
+		
+		JComponent crossfadePane = new JComponent() {
+			
+			private static final long serialVersionUID = 1L;
+			
+			
+			/**
+			 * Paint the component
+			 * 
+			 * @param g the graphics context
+			 */
+			@Override
+			protected void paintComponent(Graphics g) {
+				if (crossfade == null || !crossfade.paint((Graphics2D) g)) {
+					crossfadeLost = true;
+					g.setColor(label.getBackground());
+					g.fillRect(0, 0, getWidth(), getHeight());
+				}
+			}
+		};
+		
+		crossfadePane.setOpaque(true);
+		setGlassPane(crossfadePane);
+		
+		prepareIndicators(renderer);
 
 		if (gd.isFullScreenSupported()) {
 			gd.setFullScreenWindow(this);
@@ -300,108 +526,998 @@ public class CounterFrame extends JFrame implements KeyListener {
 	
 	
 	/**
-	 * Start
+	 * Enable or disable active rendering, which draws the entire screen
+	 * directly into a page-flipping buffer strategy from a dedicated thread
+	 * instead of painting through Swing. This must be called before start().
+	 * 
+	 * @param active true to enable active rendering
 	 */
-	public void start() {
+	public void setActiveRendering(boolean active) {
+		this.activeRendering = active;
+	}
+	
+	
+	/**
+	 * Create a renderer for a screen of the given size
+	 * 
+	 * @param size the screen size
+	 * @return the renderer
+	 */
+	private CounterRenderer createRenderer(Dimension size) {
 		
-		setCounter(startValue);
-		setVisible(true);
+		CounterRenderer r = new CounterRenderer(size, startValue, goalVaue,
+				normalForeground, normalBackground,
+				goalForeground, goalBackground,
+				fontSizeScale, indicator, goalReachedText);
 		
-		if (graphicalIndicator != null) graphicalIndicator.repaint();
+		r.startAnimation(frameInterval);
+		return r;
 	}
 	
 	
 	/**
-	 * Set the colors
+	 * Prepare the indicators of a renderer in the background. Once they
+	 * are ready, the active rendering thread installs them with the next
+	 * frame, and otherwise they are installed on the EDT.
 	 * 
-	 * @param foreground the foreground color
-	 * @param background the background color
+	 * @param r the renderer
 	 */
-	private void setColors(Color foreground, Color background) {
+	private void prepareIndicators(final CounterRenderer r) {
 		
-		if (backgroundIndicator == null) {
-			setBackground(background);
-			labelPanel.setBackground(background);
+		preparer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					r.prepareIndicators();
+				}
+				catch (final RuntimeException e) {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							indicatorsFailed(e);
+						}
+					});
+					return;
+				}
+				SwingUtilities.invokeLater(indicatorsReadyTask);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Report that the indicators could not be prepared in the status text
+	 * above the digits; the counter keeps running without them. This runs
+	 * on the EDT.
+	 * 
+	 * @param e the error
+	 */
+	private void indicatorsFailed(RuntimeException e) {
+		
+		String text = "Cannot load the indicator: " + e.getMessage();
+		System.err.println(text);
+		
+		if (activeRendering) {
+			setStatusText(text);
+			requestRender();
 		}
 		else {
-			backgroundIndicator.setBackground(background);
+			topLabel.setFont(renderer.getStatusFont());
+			topLabel.setText(text);
 		}
+	}
+	
+	
+	/**
+	 * Handle the indicators that became ready; this runs on the EDT, which
+	 * creates the components of the indicators
+	 */
+	private void indicatorsReady() {
 		
-		if (graphicalIndicator != null) graphicalIndicator.setBackground(background);
+		renderer.createIndicators();
 		
-		label.setBackground(background);
-		label.setForeground(foreground);
+		if (activeRendering) {
+			if (frameRenderers != null) {
+				for (int i = 0; i < frameRenderers.size(); i++) {
+					frameRenderers.get(i).createIndicators();
+				}
+			}
+			requestRender();
+			return;
+		}
 		
-		topLabel.setBackground(background);
-		topLabel.setForeground(foreground);
+		boolean fade = isVisible();
+		if (!renderer.installIndicators(fade)) return;
 		
-		bottomLabel.setBackground(background);
-		bottomLabel.setForeground(foreground);
+		graphicalIndicator = renderer.getGraphicalIndicator();
+		backgroundIndicator = renderer.getBackgroundIndicator();
+		
+		Color background = label.getBackground();
+		
+		if (graphicalIndicator != null) {
+			graphicalIndicator.setBackground(background);
+			if (displayedCounter >= 0) graphicalIndicator.setValue(displayedCounter);
+			if (fade) graphicalIndicator.setAlpha(0);
+			indicatorPanel.add(graphicalIndicator, BorderLayout.CENTER);
+			indicatorPanel.revalidate();
+		}
+		
+		if (backgroundIndicator != null) {
+			backgroundIndicator.setBackground(background);
+			if (displayedCounter >= 0) backgroundIndicator.setValue(displayedCounter);
+			if (fade) backgroundIndicatorAlpha = 0;
+			labelPanel.repaint();
+			
+			animationTimer = new javax.swing.Timer((int) Math.max(1, frameInterval / 1000000L), new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					animateIndicators();
+				}
+			});
+			animationTimer.start();
+		}
+		
+		if (!fade) return;
+		
+		fadeTimer = new javax.swing.Timer((int) Math.max(1, frameInterval / 1000000L), new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				fadeIndicators();
+			}
+		});
+		fadeTimer.start();
 	}
 	
 	
 	/**
-	 * Set the counter
-	 * 
-	 * @param c the new counter value
+	 * Advance the fade-in of the indicators
 	 */
-	private void setCounter(int c) {
+	private void fadeIndicators() {
 		
-		counter = c;
-		if (graphicalIndicator != null) graphicalIndicator.setValue(c);
-		if (backgroundIndicator != null) backgroundIndicator.setValue(c);
+		float alpha = renderer.getIndicatorAlpha();
 		
-		String text = counter >= 0 ? "" + counter : "";
+		if (graphicalIndicator != null) graphicalIndicator.setAlpha(alpha);
 		
-		FontMetrics fm = label.getFontMetrics(defaultFont);
-		int w = fm.stringWidth(text);
-		int maxw = 9 * label.getWidth() / 10;
-		if (w > maxw) {
-			label.setFont(new Font(defaultFont.getName(), Font.PLAIN,
-					(int) ((3 * screenSize.height / 4)
-						* (maxw / (float) w))));
+		if (backgroundIndicator != null) {
+			backgroundIndicatorAlpha = alpha;
+			labelPanel.repaint();
 		}
-		else {
-			label.setFont(defaultFont);
+		
+		if (alpha >= 1) {
+			fadeTimer.stop();
+			fadeTimer = null;
 		}
-		label.setText(text);
+	}
+	
+	
+	/**
+	 * Advance the animation of the background indicator, and redraw only
+	 * the regions that it changed right away, one by one, since a regular
+	 * repaint would merge them into a single large region
+	 */
+	private void animateIndicators() {
+		
+		if (backgroundIndicator == null || !isVisible() || crossfade != null) return;
 		
-		if (counter >= goalVaue) {
-			setColors(goalForeground, goalBackground);
-			bottomLabel.setText("".equals(goalReachedText) ? " " : goalReachedText);
+		long start = System.nanoTime();
+		renderer.animate(start);
+		
+		dirtyRegions.clear();
+		backgroundIndicator.collectDirtyRegions(dirtyRegions);
+		if (dirtyRegions.isEmpty()) return;
+		
+		paintingAnimation = true;
+		try {
+			for (int i = 0; i < dirtyRegions.size(); i++) {
+				labelPanel.paintImmediately(dirtyRegions.get(i));
+			}
 		}
-		else {
-			setColors(normalForeground, normalBackground);
-			bottomLabel.setText(" ");
+		finally {
+			paintingAnimation = false;
 		}
 		
-		repaint();
+		long time = System.nanoTime() - start;
+		renderer.recordFrameTime(time);
+		frameTimeHistogram.record(time);
 	}
 	
-
+	
 	/**
-	 * Handler for pressing a key
+	 * Show the counter on all attached displays. The counter is rendered
+	 * once per unique display resolution, and the frame is then copied to
+	 * each display with that resolution. This implies active rendering, and
+	 * it must be called before start().
 	 * 
-	 * @param e the event
+	 * @param multiDisplay true to use all displays
+	 */
+	public void setMultiDisplay(boolean multiDisplay) {
+		this.multiDisplay = multiDisplay;
+	}
+	
+	
+	/**
+	 * Set the counter value to start counting from, such as when resuming
+	 * a previous count. This must be called before start().
+	 * 
+	 * @param value the initial counter value
+	 */
+	public void setInitialValue(int value) {
+		this.initialValue = value;
+	}
+	
+	
+	/**
+	 * Set the journal that records every displayed counter value. The
+	 * journal is closed when the counter exits.
+	 * 
+	 * @param journal the journal, or null for none
+	 */
+	public void setJournal(CounterJournal journal) {
+		this.journal = journal;
+	}
+	
+	
+	/**
+	 * Start listening for the counter commands over TCP and UDP. The
+	 * commands are not authenticated, so listen only on the loopback
+	 * address unless the counter must be controlled from other hosts.
+	 * 
+	 * @param address the address to listen on, or null for the loopback address
+	 * @param port the port
+	 * @throws IOException if the port cannot be opened
+	 * @see CommandListener
+	 */
+	public void startCommandListener(InetAddress address, int port) throws IOException {
+		
+		if (commandListener != null) commandListener.stop();
+		
+		if (address == null) address = InetAddress.getLoopbackAddress();
+		commandListener = new CommandListener(new InetSocketAddress(address, port), this);
+		try {
+			commandListener.start();
+		}
+		catch (IOException e) {
+			commandListener = null;
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * Apply a batch of counter commands received from the network
+	 * 
+	 * @param set true if the batch starts by setting the counter
+	 * @param value the value to set the counter to, if set is true
+	 * @param deltas the increments and the decrements to apply in order
+	 * @param count the number of deltas
 	 */
 	@Override
-	public void keyPressed(KeyEvent e) {
+	public void applyCommands(boolean set, int value, long[] deltas, int count) {
+		model.apply(set, value, deltas, count);
+	}
+	
+	
+	/**
+	 * Get the counter model, which can be changed from any thread
+	 * 
+	 * @return the counter model
+	 */
+	public CounterModel getModel() {
+		return model;
+	}
+	
+	
+	/**
+	 * Handle a change of the counter, which can happen on any thread
+	 * 
+	 * @param model the counter model
+	 */
+	@Override
+	public void counterChanged(CounterModel model) {
 		
-		// Space bar - advance the counter 
+		inputTime.compareAndSet(0, System.nanoTime());
 		
-		if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-			setCounter(counter + 1);
+		if (activeRendering || SwingUtilities.isEventDispatchThread()) {
+			requestRender();
 		}
+		else {
+			SwingUtilities.invokeLater(requestRenderTask);
+		}
+	}
+	
+	
+	/**
+	 * Get the value to display for a snapshot of the counter
+	 * 
+	 * @param snapshot the snapshot
+	 * @return the value to display
+	 */
+	private static int getDisplayValue(CounterModel.Snapshot snapshot) {
+		return (int) Math.min(Integer.MAX_VALUE, snapshot.getValue());
+	}
+	
+	
+	/**
+	 * Start
+	 */
+	public void start() {
 		
-		// Backspace - decrease the counter 
+		model.set(Math.max(0, initialValue));
+		model.addListener(this);
 		
-		if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE && counter > 0) {
-			setCounter(counter - 1);
+		if (multiDisplay) activeRendering = true;
+		
+		if (activeRendering) {
+			getContentPane().removeAll();
+			setIgnoreRepaint(true);
+			setVisible(true);
+			if (multiDisplay) openOutputs();
+			startRenderThread();
+			return;
 		}
 		
-		// Escape - exit
+		render();
+		setVisible(true);
 		
-		if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+		if (graphicalIndicator != null) graphicalIndicator.repaint();
+	}
+	
+	
+	/**
+	 * Open a full-screen window on every other display, and prepare one
+	 * shared frame for each unique display resolution
+	 */
+	private void openOutputs() {
+		
+		GraphicsDevice primary = getGraphicsConfiguration().getDevice();
+		
+		outputs = new ArrayList<DisplayOutput>();
+		frameRenderers = new ArrayList<CounterRenderer>();
+		frameImages = new ArrayList<BufferedImage>();
+		
+		for (GraphicsDevice d : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+			DisplayOutput o;
+			if (d == primary) {
+				o = new DisplayOutput(d, this);
+				primaryOutput = o;
+			}
+			else {
+				o = new DisplayOutput(d, null);
+				o.open(getTitle(), this);
+			}
+			outputs.add(o);
+		}
+		
+		outputFrames = new int[outputs.size()];
+		
+		for (int i = 0; i < outputs.size(); i++) {
+			DisplayOutput o = outputs.get(i);
+			Dimension size = o.getSize();
+			
+			int f = -1;
+			for (int j = 0; j < frameRenderers.size(); j++) {
+				if (frameRenderers.get(j).getSize().equals(size)) f = j;
+			}
+			
+			if (f < 0) {
+				f = frameRenderers.size();
+				if (size.equals(renderer.getSize())) {
+					frameRenderers.add(renderer);
+				}
+				else {
+					CounterRenderer r = createRenderer(size);
+					prepareIndicators(r);
+					frameRenderers.add(r);
+				}
+				frameImages.add(o.getDevice().getDefaultConfiguration()
+						.createCompatibleImage(size.width, size.height));
+			}
+			
+			outputFrames[i] = f;
+		}
+	}
+	
+	
+	/**
+	 * Close the windows on the other displays
+	 */
+	private void closeOutputs() {
+		
+		if (outputs == null) return;
+		
+		for (int i = 0; i < outputs.size(); i++) {
+			outputs.get(i).close();
+		}
+		
+		outputs = null;
+		primaryOutput = null;
+	}
+	
+	
+	/**
+	 * Set the status text of all renderers
+	 * 
+	 * @param text the text, or null to hide it
+	 */
+	private void setStatusText(String text) {
+		
+		renderer.setStatusText(text);
+		
+		if (frameRenderers != null) {
+			for (int i = 0; i < frameRenderers.size(); i++) {
+				frameRenderers.get(i).setStatusText(text);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Create the buffer strategy and start the active rendering thread
+	 */
+	private void startRenderThread() {
+		
+		final BufferStrategy strategy;
+		
+		if (primaryOutput != null) {
+			primaryOutput.open(getTitle(), this);
+			strategy = null;
+		}
+		else {
+			BufferCapabilities caps = getGraphicsConfiguration().getBufferCapabilities();
+			createBufferStrategy(caps.isPageFlipping() ? 3 : 2);
+			strategy = getBufferStrategy();
+		}
+		
+		renderThreadRunning = true;
+		renderRequested = true;
+		
+		renderThread = new Thread("Counter Renderer") {
+			@Override
+			public void run() {
+				renderLoop(strategy);
+			}
+		};
+		renderThread.setDaemon(true);
+		renderThread.start();
+	}
+	
+	
+	/**
+	 * Stop the active rendering thread and wait for it to finish
+	 */
+	private void stopRenderThread() {
+		
+		if (renderThread == null) return;
+		
+		synchronized (renderLock) {
+			renderThreadRunning = false;
+			renderLock.notifyAll();
+		}
+		
+		try {
+			renderThread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		renderThread = null;
+	}
+	
+	
+	/**
+	 * The body of the active rendering thread. It draws a frame whenever
+	 * the counter changes, and also once a second in case the window
+	 * contents were damaged.
+	 * 
+	 * @param strategy the buffer strategy, or null to show the shared
+	 *                 frames on all displays instead
+	 */
+	private void renderLoop(BufferStrategy strategy) {
+		
+		while (renderThreadRunning) {
+			
+			// Keep drawing frames while animating, such as when the indicators
+			// are fading in, but only as often as the animation changes
+			
+			long delay = getFrameDelay(System.nanoTime());
+			long timeout = delay >= 0 ? Math.max(1, delay / 1000000L) : 1000;
+			
+			synchronized (renderLock) {
+				if (!renderRequested && renderThreadRunning) {
+					try {
+						renderLock.wait(timeout);
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!renderThreadRunning) return;
+				renderRequested = false;
+			}
+			
+			long start = System.nanoTime();
+			long input = inputTime.getAndSet(0);
+			int value = getDisplayValue(model.snapshot());
+			if (journal != null) journal.record(value, startValue, goalVaue);
+			
+			if (strategy == null) {
+				renderOutputs(value);
+				Toolkit.getDefaultToolkit().sync();
+				frameCompleted(start, input);
+				continue;
+			}
+			
+			renderer.setValue(value);
+			
+			do {
+				do {
+					Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+					try {
+						renderer.paint(g);
+					}
+					finally {
+						g.dispose();
+					}
+				}
+				while (strategy.contentsRestored());
+				
+				strategy.show();
+			}
+			while (strategy.contentsLost());
+			
+			Toolkit.getDefaultToolkit().sync();
+			frameCompleted(start, input);
+		}
+	}
+	
+	
+	/**
+	 * Get the time until any renderer needs the next frame if the value does
+	 * not change; this must be called on the active rendering thread
+	 * 
+	 * @param now the current time (System.nanoTime)
+	 * @return the time in nanoseconds, or -1 if not animating
+	 */
+	private long getFrameDelay(long now) {
+		
+		if (frameRenderers == null) return renderer.getFrameDelay(now);
+		
+		long delay = -1;
+		for (int i = 0; i < frameRenderers.size(); i++) {
+			long d = frameRenderers.get(i).getFrameDelay(now);
+			if (d >= 0 && (delay < 0 || d < delay)) delay = d;
+		}
+		
+		return delay;
+	}
+	
+	
+	/**
+	 * Render each shared frame once and copy it to all displays with the
+	 * same resolution
+	 * 
+	 * @param value the counter value
+	 */
+	private void renderOutputs(int value) {
+		
+		for (int i = 0; i < frameRenderers.size(); i++) {
+			CounterRenderer r = frameRenderers.get(i);
+			r.setValue(value);
+			
+			Graphics2D g = frameImages.get(i).createGraphics();
+			try {
+				r.paint(g);
+			}
+			finally {
+				g.dispose();
+			}
+		}
+		
+		for (int i = 0; i < outputs.size(); i++) {
+			outputs.get(i).show(frameImages.get(outputFrames[i]));
+		}
+	}
+	
+	
+	/**
+	 * Record the statistics about a completed frame
+	 * 
+	 * @param start the time when the painting started (System.nanoTime)
+	 * @param input the time of the earliest key press shown by the frame,
+	 *              or 0 if none
+	 */
+	private void frameCompleted(long start, long input) {
+		
+		long now = System.nanoTime();
+		frameTimeHistogram.record(now - start);
+		if (input != 0) latencyHistogram.record(now - input);
+	}
+	
+	
+	/**
+	 * Show or hide the statistics overlay in the area above the digits
+	 */
+	private void toggleStatistics() {
+		
+		if (hudTimer != null) {
+			hudTimer.stop();
+			hudTimer = null;
+			if (activeRendering) {
+				setStatusText(null);
+				requestRender();
+			}
+			else {
+				topLabel.setText(" ");
+				topLabel.setFont(renderer.getLabelFont());
+			}
+			return;
+		}
+		
+		latencyHistogram.reset();
+		frameTimeHistogram.reset();
+		
+		hudTimer = new javax.swing.Timer(500, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				updateStatistics();
+			}
+		});
+		
+		if (!activeRendering) topLabel.setFont(renderer.getStatusFont());
+		updateStatistics();
+		hudTimer.start();
+	}
+	
+	
+	/**
+	 * Update the text of the statistics overlay
+	 */
+	private void updateStatistics() {
+		
+		String text = "Latency: " + formatStatistics(latencyHistogram)
+				+ "     Frame: " + formatStatistics(frameTimeHistogram);
+		
+		if (activeRendering) {
+			setStatusText(text);
+			requestRender();
+		}
+		else {
+			topLabel.setText(text);
+		}
+	}
+	
+	
+	/**
+	 * Format the statistics of a histogram
+	 * 
+	 * @param h the histogram
+	 * @return the formatted text
+	 */
+	private static String formatStatistics(TimeHistogram h) {
+		return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms (%d)",
+				h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0,
+				h.getMax() / 1000.0, h.getCount());
+	}
+	
+	
+	/**
+	 * Set the colors
+	 * 
+	 * @param foreground the foreground color
+	 * @param background the background color
+	 * @return true if the colors changed
+	 */
+	private boolean setColors(Color foreground, Color background) {
+		
+		if (foreground.equals(label.getForeground())
+				&& background.equals(label.getBackground())) {
+			return false;
+		}
+		
+		if (backgroundIndicator == null) {
+			setBackground(background);
+			labelPanel.setBackground(background);
+		}
+		else {
+			backgroundIndicator.setBackground(background);
+		}
+		
+		if (graphicalIndicator != null) graphicalIndicator.setBackground(background);
+		if (indicatorPanel != null) indicatorPanel.setBackground(background);
+		
+		label.setBackground(background);
+		label.setForeground(foreground);
+		
+		topLabel.setBackground(background);
+		topLabel.setForeground(foreground);
+		
+		bottomLabel.setBackground(background);
+		bottomLabel.setForeground(foreground);
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Request the display to be updated with the current counter value. The
+	 * update happens right away if the last one was more than a screen
+	 * refresh ago, and otherwise it is deferred until then, so that bursts
+	 * of key presses are coalesced into a single update.
+	 */
+	private void requestRender() {
+		
+		if (activeRendering) {
+			synchronized (renderLock) {
+				renderRequested = true;
+				renderLock.notifyAll();
+			}
+			return;
+		}
+		
+		if (renderTimer.isRunning()) return;
+		
+		long wait = frameInterval - (System.nanoTime() - lastRenderTime);
+		if (wait <= 0) {
+			render();
+		}
+		else {
+			renderTimer.setInitialDelay((int) Math.max(1, wait / 1000000L));
+			renderTimer.start();
+		}
+	}
+	
+	
+	/**
+	 * Update the display with the current counter value
+	 */
+	private void render() {
+		
+		lastRenderTime = System.nanoTime();
+		
+		long input = inputTime.getAndSet(0);
+		if (input != 0 && renderedInputTime == 0) renderedInputTime = input;
+		
+		int c = getDisplayValue(model.snapshot());
+		if (c != displayedCounter) setCounter(c);
+	}
+	
+	
+	/**
+	 * Display the given counter value
+	 * 
+	 * @param c the counter value
+	 */
+	private void setCounter(int c) {
+		
+		displayedCounter = c;
+		if (journal != null) journal.record(c, startValue, goalVaue);
+		
+		
+		// Cache the frame before switching the palette for the crossfade
+		
+		boolean goal = c >= goalVaue;
+		
+		if (!activeRendering && isVisible()
+				&& goalPalette != null && goalPalette.booleanValue() != goal) {
+			beginCrossfade();
+		}
+		
+		
+		// Update the indicators and the label
+		
+		if (graphicalIndicator != null) graphicalIndicator.setValue(c);
+		if (backgroundIndicator != null) backgroundIndicator.setValue(c);
+		
+		if (c >= 0) {
+			label.setValue(c);
+		}
+		else {
+			label.clear();
+		}
+		
+		
+		// Switch the palette only when crossing the goal
+		
+		boolean colorsChanged = false;
+		
+		if (goalPalette == null || goalPalette.booleanValue() != goal) {
+			goalPalette = Boolean.valueOf(goal);
+			if (goal) {
+				colorsChanged = setColors(goalForeground, goalBackground);
+				bottomLabel.setText("".equals(goalReachedText) ? " " : goalReachedText);
+			}
+			else {
+				colorsChanged = setColors(normalForeground, normalBackground);
+				bottomLabel.setText(" ");
+			}
+		}
+		
+		
+		// Show the crossfade instead, and repaint everything once it is done
+		
+		if (crossfade != null) {
+			if (backgroundIndicator != null) {
+				dirtyRegions.clear();
+				backgroundIndicator.collectDirtyRegions(dirtyRegions);
+			}
+			showCrossfade();
+			return;
+		}
+		
+		
+		// Repaint only the regions of the background indicator reported as
+		// dirty (the label and the graphical indicator repaint themselves)
+		
+		if (colorsChanged) {
+			if (backgroundIndicator != null) {
+				dirtyRegions.clear();
+				backgroundIndicator.collectDirtyRegions(dirtyRegions);
+			}
+			repaint();
+			return;
+		}
+		
+		if (backgroundIndicator != null) {
+			dirtyRegions.clear();
+			backgroundIndicator.collectDirtyRegions(dirtyRegions);
+			for (int i = 0; i < dirtyRegions.size(); i++) {
+				labelPanel.repaint(dirtyRegions.get(i));
+			}
+		}
+	}
+	
+
+	/**
+	 * Start a crossfade by caching the frame that is currently on the screen
+	 */
+	private void beginCrossfade() {
+		
+		if (crossfade != null) crossfade.dispose();
+		
+		JRootPane rp = getRootPane();
+		crossfade = new Crossfade(getGraphicsConfiguration(), rp.getWidth(), rp.getHeight());
+		crossfadeLost = false;
+		
+		Graphics2D g = crossfade.createFromGraphics();
+		try {
+			paintContent(g);
+		}
+		finally {
+			g.dispose();
+		}
+	}
+	
+	
+	/**
+	 * Cache the frame with the current counter value as the target of the
+	 * crossfade, and show the crossfade if it is not shown yet
+	 */
+	private void showCrossfade() {
+		
+		Graphics2D g = crossfade.createToGraphics();
+		try {
+			paintContent(g);
+		}
+		finally {
+			g.dispose();
+		}
+		
+		if (!crossfadeTimer.isRunning()) {
+			crossfade.start();
+			getGlassPane().setVisible(true);
+			crossfadeTimer.start();
+		}
+		
+		getGlassPane().repaint();
+	}
+	
+	
+	/**
+	 * Advance the crossfade, which only blends the two cached frames
+	 */
+	private void crossfadeStep() {
+		
+		if (crossfade == null) {
+			crossfadeTimer.stop();
+			return;
+		}
+		
+		if (crossfade.isFinished() || crossfadeLost) {
+			endCrossfade();
+		}
+		else {
+			getGlassPane().repaint();
+		}
+	}
+	
+	
+	/**
+	 * Stop the crossfade and show the components again
+	 */
+	private void endCrossfade() {
+		
+		crossfadeTimer.stop();
+		if (crossfade == null) return;
+		
+		getGlassPane().setVisible(false);
+		crossfade.dispose();
+		crossfade = null;
+		
+		getRootPane().repaint();
+	}
+	
+	
+	/**
+	 * Paint the contents of the window into an offscreen image
+	 * 
+	 * @param g the graphics object of the image
+	 */
+	private void paintContent(Graphics2D g) {
+		
+		paintingAnimation = true;
+		try {
+			getContentPane().validate();
+			getContentPane().paint(g);
+		}
+		finally {
+			paintingAnimation = false;
+		}
+	}
+	
+
+	/**
+	 * Get the time when an input event was created, converted from the
+	 * wall-clock milliseconds of the event to System.nanoTime
+	 * 
+	 * @param e the event
+	 * @return the time of the event (System.nanoTime)
+	 */
+	private static long getEventTime(InputEvent e) {
+		
+		long now = System.nanoTime();
+		long age = System.currentTimeMillis() - e.getWhen();
+		
+		// Ignore the event time if the clock was adjusted since the event
+		
+		if (age <= 0 || age > 60 * 1000) return now;
+		return now - age * 1000000L;
+	}
+	
+
+	/**
+	 * Handler for pressing a key
+	 * 
+	 * @param e the event
+	 */
+	@Override
+	public void keyPressed(KeyEvent e) {
+		
+		// Space bar - advance the counter 
+		
+		if (e.getKeyCode() == KeyEvent.VK_SPACE) {
+			inputTime.compareAndSet(0, getEventTime(e));
+			model.increment();
+		}
+		
+		// Backspace - decrease the counter 
+		
+		if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE && model.get() > 0) {
+			inputTime.compareAndSet(0, getEventTime(e));
+			model.decrement();
+		}
+		
+		// F3 - show or hide the statistics overlay
+		
+		if (e.getKeyCode() == KeyEvent.VK_F3) {
+			toggleStatistics();
+		}
+		
+		// Escape - exit
+		
+		if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+			
+			if (activeRendering) stopRenderThread();
 			
 			GraphicsDevice gd = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
 			gd.setFullScreenWindow(null);
@@ -409,11 +1525,22 @@ public class CounterFrame extends JFrame implements KeyListener {
 			
 			if (JOptionPane.showConfirmDialog(this, "Are you sure to exit the counter?",
 					getTitle(), JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE, null) == JOptionPane.YES_OPTION) {
+				renderTimer.stop();
+				if (hudTimer != null) hudTimer.stop();
+				if (fadeTimer != null) fadeTimer.stop();
+				if (animationTimer != null) animationTimer.stop();
+				endCrossfade();
+				preparer.shutdownNow();
+				if (commandListener != null) commandListener.stop();
+				model.removeListener(this);
+				if (journal != null) journal.close();
+				closeOutputs();
 				setVisible(false);
 				dispose();
 			}
 			else {
 				gd.setFullScreenWindow(this);
+				if (activeRendering) startRenderThread();
 			}
 		}
 	}
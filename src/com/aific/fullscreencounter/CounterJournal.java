@@ -0,0 +1,383 @@
+package com.aific.fullscreencounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+
+/**
+ * A crash-safe journal of the counter values, written through a memory
+ * mapped file. The file is a header followed by a ring of fixed-size
+ * records, each with a sequence number and a checksum. Appending a record
+ * only writes to memory, and the mapping is forced to the disk by a
+ * background thread at a fixed interval, so recording does not delay the
+ * display. Since the operating system keeps the written pages even if the
+ * program crashes, only a crash of the whole machine can lose the records
+ * written after the last force.
+ *
+ * <p>The recovery picks the valid record with the largest sequence
+ * number. A torn record fails the checksum and is ignored, and since the
+ * records are never overwritten until the ring wraps around, the record
+ * before it is still intact.</p>
+ *
+ * @author Peter Macko
+ */
+public class CounterJournal {
+
+	/// The magic number at the beginning of the file
+	private static final int MAGIC = 0x4653434A;	// "FSCJ"
+
+	/// The version of the file format
+	private static final int VERSION = 1;
+
+	/// The header size: magic, version, record size, reserved
+	static final int HEADER_SIZE = 4 * 4;
+
+	/// The record size: sequence, value, time, start value, goal, reserved,
+	/// checksum
+	static final int RECORD_SIZE = 8 + 8 + 8 + 4 + 4 + 4 + 4;
+
+	/// The number of records in the ring
+	static final int RECORDS = 2048;
+
+	/// The file size
+	private static final int FILE_SIZE = HEADER_SIZE + RECORDS * RECORD_SIZE;
+
+
+	/**
+	 * A recovered journal record
+	 */
+	public static class Entry {
+
+		private long sequence;
+		private long value;
+		private long time;
+		private int start;
+		private int goal;
+
+
+		/**
+		 * Create an instance of class Entry
+		 *
+		 * @param sequence the sequence number
+		 * @param value the counter value
+		 * @param time the time in milliseconds since the epoch
+		 * @param start the start value
+		 * @param goal the goal value
+		 */
+		private Entry(long sequence, long value, long time, int start, int goal) {
+			this.sequence = sequence;
+			this.value = value;
+			this.time = time;
+			this.start = start;
+			this.goal = goal;
+		}
+
+
+		/**
+		 * Get the sequence number
+		 *
+		 * @return the sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+
+		/**
+		 * Get the counter value
+		 *
+		 * @return the value
+		 */
+		public long getValue() {
+			return value;
+		}
+
+
+		/**
+		 * Get the time when the record was written
+		 *
+		 * @return the time in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+
+		/**
+		 * Get the start value
+		 *
+		 * @return the start value
+		 */
+		public int getStart() {
+			return start;
+		}
+
+
+		/**
+		 * Get the goal value
+		 *
+		 * @return the goal
+		 */
+		public int getGoal() {
+			return goal;
+		}
+	}
+
+
+	private RandomAccessFile file;
+	private MappedByteBuffer buffer;
+
+	/// The sequence number of the last record
+	private long sequence;
+
+	/// The last recorded value, start value and goal
+	private long lastValue;
+	private int lastStart;
+	private int lastGoal;
+
+	/// The buffer in which a record is assembled before it is copied
+	private byte[] record;
+	private ByteBuffer recordBuffer;
+	private CRC32 crc;
+
+	/// Whether there are records that have not been forced to the disk yet
+	private volatile boolean dirty;
+
+	private ScheduledExecutorService flusher;
+
+
+	/**
+	 * Create an instance of class CounterJournal, and continue after the
+	 * last valid record in the file
+	 *
+	 * @param path the journal file
+	 * @param forceInterval the interval between forcing the records to the
+	 *                      disk in milliseconds
+	 * @throws IOException if the file cannot be opened or mapped
+	 */
+	public CounterJournal(File path, long forceInterval) throws IOException {
+
+		record = new byte[RECORD_SIZE];
+		recordBuffer = ByteBuffer.wrap(record);
+		crc = new CRC32();
+
+
+		// Open and map the file, and start over if it is not a journal
+
+		File dir = path.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory " + dir);
+		}
+
+		file = new RandomAccessFile(path, "rw");
+
+		try {
+			boolean valid = file.length() == FILE_SIZE;
+			if (!valid) file.setLength(FILE_SIZE);
+
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+
+			if (!valid || !isHeaderValid(buffer)) {
+				for (int i = 0; i < FILE_SIZE; i++) buffer.put(i, (byte) 0);
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, RECORD_SIZE);
+				buffer.force();
+			}
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		Entry last = findLast(buffer, crc, record);
+		sequence = last == null ? 0 : last.getSequence();
+		lastValue = last == null ? -1 : last.getValue();
+		lastStart = last == null ? 0 : last.getStart();
+		lastGoal = last == null ? 0 : last.getGoal();
+
+
+		// Force the records periodically
+
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Counter Journal");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				force();
+			}
+		}, forceInterval, forceInterval, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Get the default journal file in the user's home directory
+	 *
+	 * @return the file
+	 */
+	public static File getDefaultFile() {
+		return new File(new File(System.getProperty("user.home"),
+				".fullscreencounter"), "journal.dat");
+	}
+
+
+	/**
+	 * Read the last valid record from a journal file
+	 *
+	 * @param path the journal file
+	 * @return the last record, or null if the file does not exist or if it
+	 *         does not contain any valid records
+	 */
+	public static Entry recover(File path) {
+
+		if (!path.isFile() || path.length() != FILE_SIZE) return null;
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(path, "r");
+			try {
+				MappedByteBuffer b = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+				if (!isHeaderValid(b)) return null;
+				return findLast(b, new CRC32(), new byte[RECORD_SIZE]);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Check the file header
+	 *
+	 * @param b the mapped file
+	 * @return true if the header is valid
+	 */
+	private static boolean isHeaderValid(ByteBuffer b) {
+		return b.getInt(0) == MAGIC && b.getInt(4) == VERSION && b.getInt(8) == RECORD_SIZE;
+	}
+
+
+	/**
+	 * Find the valid record with the largest sequence number
+	 *
+	 * @param b the mapped file
+	 * @param crc the checksum calculator
+	 * @param scratch a buffer for a single record
+	 * @return the record, or null if there are no valid records
+	 */
+	private static Entry findLast(ByteBuffer b, CRC32 crc, byte[] scratch) {
+
+		Entry last = null;
+		ByteBuffer r = ByteBuffer.wrap(scratch);
+
+		for (int i = 0; i < RECORDS; i++) {
+
+			for (int j = 0; j < RECORD_SIZE; j++) {
+				scratch[j] = b.get(HEADER_SIZE + i * RECORD_SIZE + j);
+			}
+
+			long sequence = r.getLong(0);
+			if (sequence <= 0) continue;
+
+			crc.reset();
+			crc.update(scratch, 0, RECORD_SIZE - 4);
+			if ((int) crc.getValue() != r.getInt(RECORD_SIZE - 4)) continue;
+
+			if (last == null || sequence > last.getSequence()) {
+				last = new Entry(sequence, r.getLong(8), r.getLong(16), r.getInt(24), r.getInt(28));
+			}
+		}
+
+		return last;
+	}
+
+
+	/**
+	 * Append a record, unless nothing changed since the last one. This only
+	 * writes to memory.
+	 *
+	 * @param value the counter value
+	 * @param start the start value
+	 * @param goal the goal value
+	 */
+	public synchronized void record(long value, int start, int goal) {
+
+		if (buffer == null) return;
+		if (value == lastValue && start == lastStart && goal == lastGoal) return;
+
+		sequence++;
+		lastValue = value;
+		lastStart = start;
+		lastGoal = goal;
+
+		recordBuffer.putLong(0, sequence);
+		recordBuffer.putLong(8, value);
+		recordBuffer.putLong(16, System.currentTimeMillis());
+		recordBuffer.putInt(24, start);
+		recordBuffer.putInt(28, goal);
+		recordBuffer.putInt(32, 0);
+
+		crc.reset();
+		crc.update(record, 0, RECORD_SIZE - 4);
+		recordBuffer.putInt(RECORD_SIZE - 4, (int) crc.getValue());
+
+		buffer.position(HEADER_SIZE + (int) ((sequence - 1) % RECORDS) * RECORD_SIZE);
+		buffer.put(record);
+
+		dirty = true;
+	}
+
+
+	/**
+	 * Force the records written so far to the disk
+	 */
+	public void force() {
+
+		if (!dirty) return;
+		dirty = false;
+
+		MappedByteBuffer b = buffer;
+		if (b != null) b.force();
+	}
+
+
+	/**
+	 * Force the remaining records to the disk and close the journal
+	 */
+	public void close() {
+
+		flusher.shutdownNow();
+
+		synchronized (this) {
+			if (buffer == null) return;
+			force();
+			buffer = null;
+		}
+
+		try {
+			file.close();
+		}
+		catch (IOException e) {
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package com.aific.fullscreencounter;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.util.HashMap;
+
+import javax.swing.JComponent;
+
+
+/**
+ * A label that displays the counter value by composing pre-rendered digit
+ * glyphs. The text is centered, and it is shrunk to fit within 90% of the
+ * width of the component.
+ *
+ * <p>Once the glyphs for the current number of digits are prepared, setting
+ * the value and painting the label do not allocate any memory. Only the
+ * glyphs of the current font size and of the previous one are kept, so the
+ * label does not accumulate a glyph set for every size it was fitted to.
+ * The glyphs are kept separately for each foreground color, so switching
+ * between the colors of a palette does not rasterize them again.</p>
+ *
+ * @author Peter Macko
+ */
+public class CounterLabel extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	/// The longest possible text: the minus sign and 19 digits
+	private static final int MAX_LENGTH = 20;
+
+	/// The maximum number of foreground colors with cached glyphs
+	private static final int MAX_COLORS = 4;
+
+	/// The formatted text, right-aligned in the buffer
+	private char[] text;
+	private int textOffset;
+	private int textLength;
+
+	/// The glyphs by the foreground color
+	private HashMap<Color, GlyphCache> glyphs;
+
+	/// The glyphs of the current foreground color
+	private GlyphCache currentGlyphs;
+
+
+	/**
+	 * Create an instance of class CounterLabel
+	 *
+	 * @param font the default font, which is used if the text fits
+	 */
+	public CounterLabel(Font font) {
+
+		text = new char[MAX_LENGTH];
+		textOffset = MAX_LENGTH;
+		textLength = 0;
+
+		glyphs = new HashMap<Color, GlyphCache>();
+
+		setFont(font);
+		setForeground(Color.WHITE);
+		setOpaque(false);
+	}
+
+
+	/**
+	 * Set the displayed value
+	 *
+	 * @param value the new value
+	 */
+	public void setValue(long value) {
+
+		int oldOffset = textOffset;
+		int oldLength = textLength;
+		boolean changed = false;
+
+
+		// Format the number from the end of the buffer
+
+		boolean negative = value < 0;
+		int i = MAX_LENGTH;
+
+		do {
+			int d = (int) (value % 10);
+			char c = (char) ('0' + (d < 0 ? -d : d));
+			value /= 10;
+			if (text[--i] != c) changed = true;
+			text[i] = c;
+		}
+		while (value != 0);
+
+		if (negative) {
+			if (text[--i] != '-') changed = true;
+			text[i] = '-';
+		}
+
+		textOffset = i;
+		textLength = MAX_LENGTH - i;
+
+		if (changed || textOffset != oldOffset || textLength != oldLength) repaint();
+	}
+
+
+	/**
+	 * Clear the displayed value
+	 */
+	public void clear() {
+		if (textLength == 0) return;
+		textOffset = MAX_LENGTH;
+		textLength = 0;
+		repaint();
+	}
+
+
+	/**
+	 * Set the font
+	 *
+	 * @param font the new font
+	 */
+	@Override
+	public void setFont(Font font) {
+		if (glyphs != null) {
+			glyphs.clear();
+			currentGlyphs = null;
+		}
+		super.setFont(font);
+	}
+
+
+	/**
+	 * Set the foreground color
+	 *
+	 * @param color the new color
+	 */
+	@Override
+	public void setForeground(Color color) {
+		if (currentGlyphs != null && !color.equals(getForeground())) currentGlyphs = null;
+		super.setForeground(color);
+	}
+
+
+	/**
+	 * Get the glyphs of the current font and foreground color
+	 *
+	 * @return the glyph cache
+	 */
+	private GlyphCache getGlyphCache() {
+
+		if (currentGlyphs != null) return currentGlyphs;
+
+		Color color = getForeground();
+		currentGlyphs = glyphs.get(color);
+
+		if (currentGlyphs == null) {
+			if (glyphs.size() >= MAX_COLORS) glyphs.clear();
+			currentGlyphs = new GlyphCache(getFont(), color);
+			glyphs.put(color, currentGlyphs);
+		}
+
+		return currentGlyphs;
+	}
+
+
+	/**
+	 * Get the preferred size
+	 *
+	 * @return the preferred size
+	 */
+	@Override
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet()) return super.getPreferredSize();
+		DigitGlyphs g = getGlyphCache().getBaseGlyphs();
+		return new Dimension(g.charsWidth(text, textOffset, textLength), g.getHeight());
+	}
+
+
+	/**
+	 * Paint the component
+	 *
+	 * @param g the graphics context
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		paintText((Graphics2D) g, 0, 0, getWidth(), getHeight());
+	}
+
+
+	/**
+	 * Paint the text centered within the given area, independently of the
+	 * size of the component
+	 *
+	 * @param g the graphics context
+	 * @param ax the X coordinate of the area
+	 * @param ay the Y coordinate of the area
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 */
+	public void paintText(Graphics2D g, int ax, int ay, int width, int height) {
+
+		if (textLength == 0) return;
+
+		DigitGlyphs glyphs = getGlyphCache().getFittedGlyphs(text, textOffset, textLength, width);
+		int w = glyphs.charsWidth(text, textOffset, textLength);
+
+		int x = ax + (width - w) / 2;
+		int y = ay + (height - glyphs.getHeight()) / 2 + glyphs.getAscent();
+
+		glyphs.drawChars(g, text, textOffset, textLength, x, y);
+	}
+
+
+	/**
+	 * The glyphs of one font and color. Only the glyphs of the current font
+	 * size and of the previous one are kept.
+	 */
+	private static class GlyphCache {
+
+		private Font font;
+		private Color color;
+
+		/// The glyphs of the font size of the label, used to measure the text
+		private DigitGlyphs baseGlyphs;
+
+		/// The glyphs of the most recently used font size and of the one
+		/// before
+		private DigitGlyphs currentGlyphs;
+		private DigitGlyphs previousGlyphs;
+
+		/// The font sizes fitted to the current width, by the text length, or
+		/// 0 if not fitted yet
+		private int[] fittedSizes;
+		private int fittedWidth;
+
+
+		/**
+		 * Create an instance of class GlyphCache
+		 *
+		 * @param font the font of the label
+		 * @param color the color
+		 */
+		public GlyphCache(Font font, Color color) {
+			this.font = font;
+			this.color = color;
+			this.fittedSizes = new int[MAX_LENGTH + 1];
+			this.fittedWidth = -1;
+		}
+
+
+		/**
+		 * Get the glyphs for the font size of the label, which are only
+		 * rasterized if the text is drawn at that size
+		 *
+		 * @return the glyphs
+		 */
+		public DigitGlyphs getBaseGlyphs() {
+			if (baseGlyphs == null) baseGlyphs = new DigitGlyphs(font, color);
+			return baseGlyphs;
+		}
+
+
+		/**
+		 * Get the glyphs for the given font size, and make them the current
+		 * glyphs. The glyphs of the size before the previous one are
+		 * released.
+		 *
+		 * @param size the font size
+		 * @return the glyphs
+		 */
+		private DigitGlyphs getGlyphs(int size) {
+
+			if (currentGlyphs != null && currentGlyphs.getFont().getSize() == size) {
+				return currentGlyphs;
+			}
+
+			DigitGlyphs base = getBaseGlyphs();
+			DigitGlyphs g;
+
+			if (previousGlyphs != null && previousGlyphs.getFont().getSize() == size) {
+				g = previousGlyphs;
+			}
+			else if (base.getFont().getSize() == size) {
+				g = base;
+			}
+			else {
+				g = new DigitGlyphs(font.deriveFont((float) size), color);
+			}
+
+			DigitGlyphs evicted = previousGlyphs;
+			previousGlyphs = currentGlyphs;
+			currentGlyphs = g;
+
+
+			// The base glyphs stay around for measuring, but not their images
+
+			if (evicted == base && evicted != currentGlyphs && evicted != previousGlyphs) {
+				base.flush();
+			}
+
+			return g;
+		}
+
+
+		/**
+		 * Get the glyphs that fit the given text into the given width
+		 *
+		 * @param text the characters
+		 * @param offset the index of the first character
+		 * @param length the number of characters
+		 * @param width the available width
+		 * @return the glyphs
+		 */
+		public DigitGlyphs getFittedGlyphs(char[] text, int offset, int length, int width) {
+
+			if (fittedWidth != width) {
+				for (int i = 0; i < fittedSizes.length; i++) fittedSizes[i] = 0;
+				fittedWidth = width;
+			}
+
+			int size = fittedSizes[length];
+			if (size > 0) return getGlyphs(size);
+
+
+			// Shrink the font if the text does not fit
+
+			DigitGlyphs base = getBaseGlyphs();
+			size = font.getSize();
+
+			int w = base.charsWidth(text, offset, length);
+			int maxw = 9 * width / 10;
+			if (w > maxw && w > 0) {
+				size = Math.max(1, (int) (size * (maxw / (float) w)));
+			}
+
+			fittedSizes[length] = size;
+			return getGlyphs(size);
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.aific.fullscreencounter;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The counter, which can be changed by any number of threads at once. The
+ * increments go to a {@link LongAdder}, so concurrent producers do not
+ * contend with each other. Decrements, which must not take the counter
+ * below zero, and setting the counter take a lock.
+ *
+ * <p>The readers take versioned snapshots of the counter. The listeners
+ * are notified when the counter changes after the last snapshot was
+ * taken, and only once until the next snapshot, so a burst of updates
+ * results in a single notification. A listener would typically schedule
+ * a display update that takes the latest snapshot when it runs.</p>
+ *
+ * @author Peter Macko
+ */
+public class CounterModel {
+
+
+	/**
+	 * A listener for the counter changes
+	 */
+	public interface Listener {
+
+		/**
+		 * The counter changed since the last snapshot. This is called on the
+		 * thread that changed the counter.
+		 *
+		 * @param model the counter model
+		 */
+		public void counterChanged(CounterModel model);
+	}
+
+
+	/**
+	 * An immutable snapshot of the counter
+	 */
+	public static class Snapshot {
+
+		private long value;
+		private long version;
+
+
+		/**
+		 * Create an instance of class Snapshot
+		 *
+		 * @param value the counter value
+		 * @param version the version
+		 */
+		private Snapshot(long value, long version) {
+			this.value = value;
+			this.version = version;
+		}
+
+
+		/**
+		 * Get the counter value
+		 *
+		 * @return the value
+		 */
+		public long getValue() {
+			return value;
+		}
+
+
+		/**
+		 * Get the version, which is the number of updates included in the
+		 * snapshot. A newer snapshot has a larger or the same version.
+		 *
+		 * @return the version
+		 */
+		public long getVersion() {
+			return version;
+		}
+	}
+
+
+	/// The sum of all increments
+	private final LongAdder increments = new LongAdder();
+
+	/// The number of updates
+	private final LongAdder updates = new LongAdder();
+
+	/// The value is the base plus the sum of the increments; the base is
+	/// changed only while holding the lock
+	private final Object lock = new Object();
+	private volatile long base;
+
+	/// The last snapshot
+	private Snapshot snapshot;
+
+	/// Whether the counter changed since the last snapshot
+	private final AtomicBoolean changed = new AtomicBoolean();
+
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+
+	/**
+	 * Create an instance of class CounterModel
+	 *
+	 * @param value the initial value
+	 */
+	public CounterModel(long value) {
+		base = value;
+		snapshot = new Snapshot(value, 0);
+	}
+
+
+	/**
+	 * Add a listener
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+
+	/**
+	 * Remove a listener
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+
+	/**
+	 * Get the current value
+	 *
+	 * @return the value
+	 */
+	public long get() {
+		return base + increments.sum();
+	}
+
+
+	/**
+	 * Increment the counter by one
+	 */
+	public void increment() {
+		increment(1);
+	}
+
+
+	/**
+	 * Increment the counter
+	 *
+	 * @param n the increment, which must not be negative
+	 */
+	public void increment(long n) {
+
+		if (n < 0) throw new IllegalArgumentException("Negative increment");
+		if (n == 0) return;
+
+		increments.add(n);
+		updates.increment();
+		fireChanged();
+	}
+
+
+	/**
+	 * Decrement the counter by one, unless it is zero
+	 */
+	public void decrement() {
+		decrement(1);
+	}
+
+
+	/**
+	 * Decrement the counter, but not below zero
+	 *
+	 * @param n the decrement, which must not be negative
+	 */
+	public void decrement(long n) {
+
+		if (n < 0) throw new IllegalArgumentException("Negative decrement");
+		if (n == 0) return;
+
+		synchronized (lock) {
+
+			// The concurrent increments can only make the value larger, so
+			// it never drops below zero
+
+			long d = Math.min(n, base + increments.sum());
+			if (d <= 0) return;
+
+			base -= d;
+			updates.increment();
+		}
+
+		fireChanged();
+	}
+
+
+	/**
+	 * Set the counter
+	 *
+	 * @param value the new value, which must not be negative
+	 */
+	public void set(long value) {
+
+		if (value < 0) throw new IllegalArgumentException("Negative value");
+
+		synchronized (lock) {
+			long current = base + increments.sum();
+			if (current == value) return;
+
+			base += value - current;
+			updates.increment();
+		}
+
+		fireChanged();
+	}
+
+
+	/**
+	 * Apply a sequence of changes one by one, in order, so that each of the
+	 * decrements stops at zero on its own
+	 * 
+	 * @param set true to set the counter first
+	 * @param value the value to set the counter to, if set is true
+	 * @param deltas the increments (positive) and the decrements (negative)
+	 * @param count the number of deltas
+	 */
+	public void apply(boolean set, long value, long[] deltas, int count) {
+
+		if (set) set(Math.max(0, value));
+
+		for (int i = 0; i < count; i++) {
+			if (deltas[i] > 0) {
+				increment(deltas[i]);
+			}
+			else {
+				decrement(-deltas[i]);
+			}
+		}
+	}
+
+
+	/**
+	 * Take a snapshot of the counter. This returns the same object if the
+	 * counter did not change since the last snapshot, and it re-enables the
+	 * notifications of the listeners.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+
+		changed.set(false);
+
+		synchronized (lock) {
+
+			// Read the version first, so that all of the updates it counts
+			// are included in the value
+
+			long version = updates.sum();
+			if (version == snapshot.version) return snapshot;
+
+			snapshot = new Snapshot(base + increments.sum(), version);
+			return snapshot;
+		}
+	}
+
+
+	/**
+	 * Notify the listeners, unless they were already notified since the
+	 * last snapshot
+	 */
+	private void fireChanged() {
+
+		if (!changed.compareAndSet(false, true)) return;
+
+		for (Listener l : listeners) {
+			l.counterChanged(this);
+		}
+	}
+}
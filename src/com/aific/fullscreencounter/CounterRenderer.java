@@ -0,0 +1,749 @@
+package com.aific.fullscreencounter;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+
+import javax.swing.UIManager;
+
+import com.aific.fullscreencounter.CounterFrame.GraphicalIndicatorEnum;
+
+
+/**
+ * The counter scene: the graphical indicators, the fonts and the colors,
+ * together with the code that draws the entire counter screen for a given
+ * value directly to a graphics object, without going through Swing.
+ *
+ * <p>The indicators are not created by the constructor, since loading and
+ * scaling their images takes a while. Call {@link #prepareIndicators()},
+ * possibly on a background thread, and the renderer picks the indicators
+ * up on the next frame. If the counter was already on the screen by then,
+ * the indicators fade in.</p>
+ *
+ * @author Peter Macko
+ */
+public class CounterRenderer {
+
+	/// The duration of the fade-in of the indicators in nanoseconds
+	private static final long FADE_TIME = 500000000L;
+
+	/// The length of a step of the indicator animation in nanoseconds; the
+	/// stars twinkle slowly, so they do not need a frame on every refresh
+	private static final long ANIMATION_STEP = 1000000000L / 30;
+
+	private Dimension size;
+	private int startValue;
+	private int goalValue;
+
+	private Color normalForeground;
+	private Color normalBackground;
+	private Color goalForeground;
+	private Color goalBackground;
+
+	private String goalReachedText;
+
+	private Font digitFont;
+	private Font labelFont;
+	private Font statusFont;
+
+	/// The status text shown above the digits, or null if none
+	private volatile String statusText;
+
+	/// The type of the indicators
+	private GraphicalIndicatorEnum indicator;
+
+	/// The width of the area on the left reserved for the graphical
+	/// indicator, so that the digits do not move when it appears
+	private int indicatorWidth;
+
+	private GraphicalIndicator graphicalIndicator;
+	private BackgroundIndicator backgroundIndicator;
+
+	/// The indicators prepared by prepareIndicators() that are waiting to be
+	/// installed on the rendering thread; the graphical indicator is a Swing
+	/// component, so only its images are prepared in the background, and it
+	/// is created on the EDT by createIndicators()
+	private volatile boolean indicatorsPrepared;
+	private Thermometer.Images preparedThermometerImages;
+	private GraphicalIndicator preparedGraphicalIndicator;
+	private BackgroundIndicator preparedBackgroundIndicator;
+
+	/// The time when the indicators started to fade in (System.nanoTime),
+	/// or 0 if they are not fading in
+	private long fadeStart;
+
+	/// Whether any frame was painted yet
+	private boolean painted;
+
+	/// The scheduler of the indicator animation, or null if not animated
+	private AnimationScheduler animation;
+	private long frameInterval;
+
+	/// Whether the background indicator asked for more frames
+	private boolean indicatorAnimating;
+
+	/// The value and whether the goal was reached in the last painted frame
+	private int paintedValue;
+	private boolean paintedGoal;
+
+	/// The crossfade between the normal and the goal palettes, or null if
+	/// none is running
+	private Crossfade crossfade;
+
+	/// The last presented frame while animated, which becomes the first
+	/// frame of the next crossfade, or null if none
+	private VolatileImage frame;
+
+	/// Whether the cached frame is up to date except for the dirty regions
+	/// of the background indicator, and the value and the status text in it
+	private boolean frameValid;
+	private int frameValue;
+	private String frameStatus;
+
+	/// The dirty regions of the background indicator, reused between frames
+	private ArrayList<Rectangle> dirtyRegions;
+
+	/// The digits, drawn by a label that is not a part of any window
+	private CounterLabel digits;
+
+	private int value;
+
+
+	/**
+	 * Create an instance of class CounterRenderer
+	 *
+	 * @param size the screen size
+	 * @param startValue the initial counter value
+	 * @param goalValue the goal counter value
+	 * @param normalForeground the normal foreground color, including alpha
+	 * @param normalBackground the normal background color
+	 * @param goalForeground the foreground color after the goal was reached, including alpha
+	 * @param goalBackground the background color after the goal was reached
+	 * @param fontSizeScale the font size scale
+	 * @param indicator the goal graphical progress indicator
+	 * @param goalReachedText the "goal reached" announcement text
+	 */
+	public CounterRenderer(Dimension size, int startValue, int goalValue,
+			Color normalForeground, Color normalBackground,
+			Color goalForeground, Color goalBackground,
+			double fontSizeScale, GraphicalIndicatorEnum indicator,
+			String goalReachedText) {
+
+		this.size = new Dimension(size);
+		this.startValue = startValue;
+		this.goalValue = goalValue;
+		this.indicator = indicator;
+
+		this.normalForeground = normalForeground;
+		this.normalBackground = normalBackground;
+		this.goalForeground = goalForeground;
+		this.goalBackground = goalBackground;
+
+		this.goalReachedText = goalReachedText == null ? "" : goalReachedText;
+
+
+		// Fonts
+
+		String fontName = UIManager.getFont("Label.font").getName();
+		digitFont = new Font(fontName, Font.PLAIN, (int) (fontSizeScale * 3 * size.height / 4));
+		labelFont = new Font(fontName, Font.PLAIN, size.height / 8);
+		statusFont = new Font(fontName, Font.PLAIN, Math.max(1, size.height / 40));
+
+		digits = new CounterLabel(digitFont);
+
+
+		// Reserve the room for the graphical indicator
+
+		graphicalIndicator = null;
+		backgroundIndicator = null;
+
+		indicatorWidth = indicator == GraphicalIndicatorEnum.THERMOMETER
+				? Thermometer.getScaledSize(size.height).width : 0;
+
+		value = Integer.MIN_VALUE;
+		dirtyRegions = new ArrayList<Rectangle>();
+	}
+
+
+	/**
+	 * Get the screen size
+	 *
+	 * @return the size
+	 */
+	public Dimension getSize() {
+		return new Dimension(size);
+	}
+
+
+	/**
+	 * Get the font for the digits
+	 *
+	 * @return the font
+	 */
+	public Font getDigitFont() {
+		return digitFont;
+	}
+
+
+	/**
+	 * Get the font for the text above and below the digits
+	 *
+	 * @return the font
+	 */
+	public Font getLabelFont() {
+		return labelFont;
+	}
+
+
+	/**
+	 * Get the font for the status text
+	 *
+	 * @return the font
+	 */
+	public Font getStatusFont() {
+		return statusFont;
+	}
+
+
+	/**
+	 * Set the status text shown above the digits. This can be called from
+	 * any thread.
+	 *
+	 * @param text the text, or null to hide it
+	 */
+	public void setStatusText(String text) {
+		statusText = text;
+	}
+
+
+	/**
+	 * Load and scale the images of the indicators, and create the indicators
+	 * that are not Swing components. This can be called on any thread, but
+	 * only once. Then call {@link #createIndicators()} on the EDT; the
+	 * indicators are installed by the next call to
+	 * {@link #installIndicators(boolean)}, which also happens at the
+	 * beginning of each frame.
+	 *
+	 * @throws RuntimeException if the images cannot be loaded
+	 */
+	public void prepareIndicators() {
+
+		if (indicatorsPrepared) throw new IllegalStateException("Already prepared");
+
+		Thermometer.Images ti = null;
+		BackgroundIndicator bi = null;
+
+		switch (indicator) {
+		case THERMOMETER:
+			ti = Thermometer.loadImages(size.height);
+			break;
+		case STARS:
+			bi = new StarIndicator(startValue, goalValue, size);
+			break;
+		case NONE:
+			break;
+		default:
+			break;
+		}
+
+		synchronized (this) {
+			preparedThermometerImages = ti;
+			preparedBackgroundIndicator = bi;
+			indicatorsPrepared = true;
+		}
+	}
+
+
+	/**
+	 * Create the graphical indicator from the images loaded by
+	 * {@link #prepareIndicators()}. Call this on the EDT once the images
+	 * are ready; until then, {@link #installIndicators(boolean)} does not
+	 * install any indicators.
+	 */
+	public void createIndicators() {
+
+		Thermometer.Images ti;
+
+		synchronized (this) {
+			ti = preparedThermometerImages;
+			preparedThermometerImages = null;
+		}
+
+		if (ti == null) return;
+
+		GraphicalIndicator gi = createThermometer(ti);
+
+		synchronized (this) {
+			preparedGraphicalIndicator = gi;
+		}
+	}
+
+
+	/**
+	 * Create the thermometer component
+	 *
+	 * @param images the scaled images
+	 * @return the thermometer
+	 */
+	private GraphicalIndicator createThermometer(Thermometer.Images images) {
+		GraphicalIndicator gi = new Thermometer(startValue, goalValue, images);
+		gi.setBackground(Color.BLACK);
+		gi.setOpaque(true);
+		return gi;
+	}
+
+
+	/**
+	 * Install the indicators prepared by {@link #prepareIndicators()} and
+	 * {@link #createIndicators()}, if they are ready and not installed yet.
+	 * This must be called on the thread that renders the counter, and it
+	 * never creates any Swing components.
+	 *
+	 * @param fade true to fade the indicators in
+	 * @return true if the indicators were installed by this call
+	 */
+	public boolean installIndicators(boolean fade) {
+
+		if (!indicatorsPrepared) return false;
+
+		synchronized (this) {
+			if (preparedThermometerImages != null) return false;
+			if (preparedGraphicalIndicator == null && preparedBackgroundIndicator == null) {
+				return false;
+			}
+
+			graphicalIndicator = preparedGraphicalIndicator;
+			backgroundIndicator = preparedBackgroundIndicator;
+			preparedGraphicalIndicator = null;
+			preparedBackgroundIndicator = null;
+		}
+
+		if (value != Integer.MIN_VALUE) {
+			if (graphicalIndicator != null) graphicalIndicator.setValue(value);
+			if (backgroundIndicator != null) backgroundIndicator.setValue(value);
+		}
+
+		fadeStart = fade ? Math.max(1, System.nanoTime()) : 0;
+		return true;
+	}
+
+
+	/**
+	 * Get the opacity of the indicators, which is less than 1 while they
+	 * are fading in
+	 *
+	 * @return the opacity between 0 and 1
+	 */
+	public float getIndicatorAlpha() {
+
+		if (fadeStart == 0) return 1;
+
+		long t = System.nanoTime() - fadeStart;
+		if (t >= FADE_TIME) {
+			fadeStart = 0;
+			return 1;
+		}
+
+		return t / (float) FADE_TIME;
+	}
+
+
+	/**
+	 * Animate the counter: crossfade between the normal and the goal
+	 * palettes, and animate the background indicator, such as by making the
+	 * stars twinkle. The indicator animation advances in fixed steps of
+	 * 1/30 s (or one frame interval, if longer), and it gets sparser if
+	 * drawing the frames takes longer than half of the frame interval. This
+	 * must be called before the first frame.
+	 *
+	 * @param frameInterval the time between two frames in nanoseconds
+	 */
+	public void startAnimation(long frameInterval) {
+		this.frameInterval = frameInterval;
+		animation = new AnimationScheduler(Math.max(frameInterval, ANIMATION_STEP),
+				frameInterval / 2);
+	}
+
+
+	/**
+	 * Advance the animation of the background indicator to the given time.
+	 * This is called by {@link #paint(Graphics2D)}, so it needs to be
+	 * called directly only when the indicator is drawn elsewhere, in which
+	 * case the regions to redraw can be then collected from the indicator.
+	 *
+	 * @param now the current time (System.nanoTime)
+	 */
+	public void animate(long now) {
+
+		if (animation == null || backgroundIndicator == null) return;
+
+		indicatorAnimating = backgroundIndicator.animate(animation.advance(now),
+				animation.getDensity());
+	}
+
+
+	/**
+	 * Record the time it took to draw a frame, which is used to adjust the
+	 * density of the animation. This is called by {@link #paint(Graphics2D)},
+	 * so it needs to be called directly only when drawing the frames
+	 * elsewhere.
+	 *
+	 * @param nanos the frame time in nanoseconds
+	 */
+	public void recordFrameTime(long nanos) {
+		if (animation != null) animation.recordFrameTime(nanos);
+	}
+
+
+	/**
+	 * Determine whether the renderer needs to draw more frames even if the
+	 * value does not change, such as while the indicators are fading in
+	 * or animating, or while crossfading between the palettes
+	 *
+	 * @return true if animating
+	 */
+	public boolean isAnimating() {
+		return fadeStart != 0 || indicatorAnimating || crossfade != null;
+	}
+
+
+	/**
+	 * Get the time until the next frame is needed if the value does not
+	 * change. This is the frame interval while fading or crossfading, but
+	 * while only the background indicator is animating, it is the time
+	 * until its next animation step.
+	 *
+	 * @param now the current time (System.nanoTime)
+	 * @return the time in nanoseconds, or -1 if not animating
+	 */
+	public long getFrameDelay(long now) {
+
+		if (fadeStart != 0 || crossfade != null) return frameInterval;
+		if (!indicatorAnimating) return -1;
+
+		return Math.max(0, animation.getNextStep() - now);
+	}
+
+
+	/**
+	 * Get the width of the area on the left reserved for the graphical
+	 * indicator
+	 *
+	 * @return the width, or 0 if there is no graphical indicator
+	 */
+	public int getIndicatorWidth() {
+		return indicatorWidth;
+	}
+
+
+	/**
+	 * Get the graphical indicator
+	 *
+	 * @return the indicator, or null if none or if not installed yet
+	 */
+	public GraphicalIndicator getGraphicalIndicator() {
+		return graphicalIndicator;
+	}
+
+
+	/**
+	 * Get the background indicator
+	 *
+	 * @return the indicator, or null if none or if not installed yet
+	 */
+	public BackgroundIndicator getBackgroundIndicator() {
+		return backgroundIndicator;
+	}
+
+
+	/**
+	 * Set the counter value that will be drawn by {@link #paint(Graphics2D)}
+	 *
+	 * @param value the counter value
+	 */
+	public void setValue(int value) {
+
+		if (this.value == value) return;
+		this.value = value;
+
+		if (graphicalIndicator != null) graphicalIndicator.setValue(value);
+		if (backgroundIndicator != null) backgroundIndicator.setValue(value);
+
+		if (value >= 0) {
+			digits.setValue(value);
+		}
+		else {
+			digits.clear();
+		}
+	}
+
+
+	/**
+	 * Draw the entire counter screen. When animated, reaching the goal or
+	 * dropping below it starts a crossfade between the cached frames before
+	 * and after the change, during which the scene is not redrawn unless
+	 * the value changes again.
+	 *
+	 * @param g the graphics object
+	 */
+	public void paint(Graphics2D g) {
+
+		long start = System.nanoTime();
+
+		installIndicators(painted);
+
+
+		// Start or update the crossfade
+
+		boolean goal = value >= goalValue;
+
+		if (animation != null && painted && goal != paintedGoal) {
+			startCrossfade(g.getDeviceConfiguration());
+		}
+		else if (crossfade != null && value != paintedValue) {
+			paintCrossfadeTarget();
+		}
+
+		painted = true;
+		paintedValue = value;
+		paintedGoal = goal;
+
+		if (crossfade != null) {
+			if (!crossfade.isFinished() && crossfade.paint(g)) {
+				recordFrameTime(System.nanoTime() - start);
+				return;
+			}
+			crossfade.dispose();
+			crossfade = null;
+		}
+
+
+		// Draw the scene, keeping a copy of it for the next crossfade
+
+		animate(start);
+
+		if (animation != null) {
+			paintFrame(g);
+		}
+		else {
+			paintScene(g);
+		}
+
+		recordFrameTime(System.nanoTime() - start);
+	}
+
+
+	/**
+	 * Bring the cached frame up to date, and copy it to the graphics
+	 * object. If only the background indicator changed since the last
+	 * frame, such as when the stars twinkle, only its dirty regions are
+	 * drawn again. If the contents of the frame are lost while drawing it,
+	 * the scene is drawn directly instead.
+	 *
+	 * @param g the graphics object
+	 */
+	private void paintFrame(Graphics2D g) {
+
+		boolean full = validateFrame(g.getDeviceConfiguration()) || !frameValid
+				|| frameValue != value || frameStatus != statusText || fadeStart != 0;
+
+		dirtyRegions.clear();
+		if (backgroundIndicator != null) backgroundIndicator.collectDirtyRegions(dirtyRegions);
+
+		Graphics2D fg = frame.createGraphics();
+		try {
+			if (full) {
+				paintScene(fg);
+			}
+			else {
+				for (int i = 0; i < dirtyRegions.size(); i++) {
+					Rectangle r = dirtyRegions.get(i);
+					fg.setClip(r.x, r.y, r.width, r.height);
+					paintScene(fg);
+				}
+			}
+		}
+		finally {
+			fg.dispose();
+		}
+
+		frameValid = !frame.contentsLost();
+		frameValue = value;
+		frameStatus = statusText;
+
+		if (frameValid) {
+			g.drawImage(frame, 0, 0, null);
+		}
+		else {
+			paintScene(g);
+		}
+	}
+
+
+	/**
+	 * Make sure that the cached frame exists and is compatible with the
+	 * screen
+	 *
+	 * @param gc the graphics configuration of the screen
+	 * @return true if the contents of the frame need to be drawn again
+	 */
+	private boolean validateFrame(GraphicsConfiguration gc) {
+
+		if (frame != null) {
+			switch (frame.validate(gc)) {
+			case VolatileImage.IMAGE_OK:
+				return false;
+			case VolatileImage.IMAGE_RESTORED:
+				return true;
+			default:
+				frame.flush();
+				break;
+			}
+		}
+
+		frame = gc.createCompatibleVolatileImage(size.width, size.height);
+		frame.validate(gc);
+		return true;
+	}
+
+
+	/**
+	 * Start the crossfade from the last presented frame to the current
+	 * value. If that frame was lost, there is no crossfade.
+	 *
+	 * @param gc the graphics configuration of the screen
+	 */
+	private void startCrossfade(GraphicsConfiguration gc) {
+
+		// If a crossfade is running, its current step is the last presented
+		// frame
+
+		if (crossfade != null) {
+			validateFrame(gc);
+
+			Graphics2D g = frame.createGraphics();
+			try {
+				crossfade.paint(g);
+			}
+			finally {
+				g.dispose();
+			}
+
+			crossfade.dispose();
+			crossfade = null;
+		}
+
+
+		// Take over the frame as the start of the crossfade
+
+		if (frame == null || frame.validate(gc) != VolatileImage.IMAGE_OK
+				|| frame.contentsLost()) {
+			return;
+		}
+
+		crossfade = new Crossfade(gc, frame);
+		frame = null;
+
+		paintCrossfadeTarget();
+		crossfade.start();
+	}
+
+
+	/**
+	 * Draw the current value into the target frame of the crossfade
+	 */
+	private void paintCrossfadeTarget() {
+
+		Graphics2D g = crossfade.createToGraphics();
+		try {
+			paintScene(g);
+		}
+		finally {
+			g.dispose();
+		}
+	}
+
+
+	/**
+	 * Draw the entire counter screen for the current value
+	 *
+	 * @param g the graphics object
+	 */
+	private void paintScene(Graphics2D g) {
+
+		boolean goal = value >= goalValue;
+		Color foreground = goal ? goalForeground : normalForeground;
+		Color background = goal ? goalBackground : normalBackground;
+
+
+		// The background, the background indicator, and the graphical
+		// indicator on the left, blended over the plain background while
+		// they are fading in
+
+		float alpha = getIndicatorAlpha();
+		Composite composite = g.getComposite();
+
+		if (backgroundIndicator == null || alpha < 1) {
+			g.setColor(background);
+			g.fillRect(0, 0, size.width, size.height);
+		}
+
+		if (alpha < 1) g.setComposite(AlphaComposite.SrcOver.derive(alpha));
+
+		if (backgroundIndicator != null) {
+			backgroundIndicator.setBackground(background);
+			backgroundIndicator.paint(g);
+		}
+
+		int left = indicatorWidth;
+		if (graphicalIndicator != null) {
+			graphicalIndicator.setBackground(background);
+			graphicalIndicator.paintIndicator(g, left, size.height);
+		}
+
+		g.setComposite(composite);
+
+
+		// The labels above and below the digits
+
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+		FontMetrics fm = g.getFontMetrics(labelFont);
+		int labelHeight = fm.getHeight();
+
+		String status = statusText;
+		if (status != null) {
+			FontMetrics sfm = g.getFontMetrics(statusFont);
+			g.setFont(statusFont);
+			g.setColor(foreground);
+			g.drawString(status,
+					left + (size.width - left - sfm.stringWidth(status)) / 2,
+					(labelHeight - sfm.getHeight()) / 2 + sfm.getAscent());
+		}
+
+		if (goal && goalReachedText.length() > 0) {
+			g.setFont(labelFont);
+			g.setColor(foreground);
+			g.drawString(goalReachedText,
+					left + (size.width - left - fm.stringWidth(goalReachedText)) / 2,
+					size.height - labelHeight + fm.getAscent());
+		}
+
+
+		// The digits
+
+		digits.setForeground(foreground);
+		digits.paintText(g, left, labelHeight, size.width - left,
+				size.height - 2 * labelHeight);
+	}
+}
@@ -0,0 +1,141 @@
+package com.aific.fullscreencounter;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.VolatileImage;
+
+
+/**
+ * A timed crossfade between two cached frames. The "before" and "after"
+ * frames are drawn once, and each step of the transition only blends them,
+ * which is two image copies, so the transition stays smooth even if the
+ * scene is expensive to draw or Java2D has no hardware acceleration. The
+ * frames are kept in volatile images compatible with the screen; if their
+ * contents are lost, the crossfade gives up and the caller draws the scene
+ * normally.
+ *
+ * @author Peter Macko
+ */
+public class Crossfade {
+
+	/// The duration of the crossfade in nanoseconds
+	public static final long DURATION = 600000000L;
+
+	private GraphicsConfiguration gc;
+	private VolatileImage from;
+	private VolatileImage to;
+
+	/// The time when the crossfade started (System.nanoTime), or 0 if not
+	/// started yet
+	private long start;
+
+
+	/**
+	 * Create an instance of class Crossfade
+	 *
+	 * @param gc the graphics configuration of the screen
+	 * @param width the width of the frames
+	 * @param height the height of the frames
+	 */
+	public Crossfade(GraphicsConfiguration gc, int width, int height) {
+		this.gc = gc;
+		this.from = gc.createCompatibleVolatileImage(width, height);
+		this.to = gc.createCompatibleVolatileImage(width, height);
+		this.start = 0;
+	}
+
+
+	/**
+	 * Create an instance of class Crossfade starting from an existing
+	 * frame, such as the frame that is currently on the screen. The
+	 * crossfade takes over the image, and flushes it when disposed.
+	 *
+	 * @param gc the graphics configuration of the screen
+	 * @param from the frame before the transition
+	 */
+	public Crossfade(GraphicsConfiguration gc, VolatileImage from) {
+		this.gc = gc;
+		this.from = from;
+		this.to = gc.createCompatibleVolatileImage(from.getWidth(), from.getHeight());
+		this.start = 0;
+	}
+
+
+	/**
+	 * Get a graphics object for drawing the frame before the transition
+	 *
+	 * @return the graphics object, which must be disposed by the caller
+	 */
+	public Graphics2D createFromGraphics() {
+		from.validate(gc);
+		return from.createGraphics();
+	}
+
+
+	/**
+	 * Get a graphics object for drawing the frame after the transition;
+	 * this can be redrawn while the crossfade is running
+	 *
+	 * @return the graphics object, which must be disposed by the caller
+	 */
+	public Graphics2D createToGraphics() {
+		to.validate(gc);
+		return to.createGraphics();
+	}
+
+
+	/**
+	 * Start the crossfade
+	 */
+	public void start() {
+		start = Math.max(1, System.nanoTime());
+	}
+
+
+	/**
+	 * Determine whether the crossfade finished
+	 *
+	 * @return true if finished
+	 */
+	public boolean isFinished() {
+		return start != 0 && System.nanoTime() - start >= DURATION;
+	}
+
+
+	/**
+	 * Draw the current step of the crossfade
+	 *
+	 * @param g the graphics object
+	 * @return true if drawn, or false if the cached frames were lost
+	 */
+	public boolean paint(Graphics2D g) {
+
+		if (from.validate(gc) != VolatileImage.IMAGE_OK
+				|| to.validate(gc) != VolatileImage.IMAGE_OK) {
+			return false;
+		}
+
+		float alpha = start == 0 ? 0
+				: Math.min(1, (System.nanoTime() - start) / (float) DURATION);
+
+		Composite composite = g.getComposite();
+
+		g.drawImage(from, 0, 0, null);
+		g.setComposite(AlphaComposite.SrcOver.derive(alpha));
+		g.drawImage(to, 0, 0, null);
+		g.setComposite(composite);
+
+		return !from.contentsLost() && !to.contentsLost();
+	}
+
+
+	/**
+	 * Release the cached frames
+	 */
+	public void dispose() {
+		from.flush();
+		to.flush();
+	}
+}
@@ -0,0 +1,234 @@
+package com.aific.fullscreencounter;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+
+
+/**
+ * Pre-rendered images of the digits 0-9 and the minus sign in a given font
+ * and color, so that a number can be drawn with a few image copies instead
+ * of rasterizing the glyphs every time. Each glyph is rasterized when it is
+ * first drawn, into an image trimmed to its pixel bounds, so that a large
+ * font does not keep images of characters that are never displayed.
+ *
+ * @author Peter Macko
+ */
+public class DigitGlyphs {
+
+	/// The characters that have glyphs
+	public static final String CHARACTERS = "0123456789-";
+
+	private Font font;
+	private Color color;
+
+	private int ascent;
+	private int descent;
+	private int leading;
+
+	/// The glyph images, or null if not rasterized yet
+	private BufferedImage[] images;
+
+	/// The offsets of the glyph images from the start of the baseline
+	private int[] imageX;
+	private int[] imageY;
+
+	private int[] advances;
+
+
+	/**
+	 * Create an instance of class DigitGlyphs
+	 *
+	 * @param font the font
+	 * @param color the color
+	 */
+	public DigitGlyphs(Font font, Color color) {
+
+		this.font = font;
+		this.color = color;
+
+
+		// Get the font metrics
+
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D sg = scratch.createGraphics();
+		setHints(sg);
+		FontMetrics fm = sg.getFontMetrics(font);
+		sg.dispose();
+
+		ascent  = fm.getAscent();
+		descent = fm.getDescent();
+		leading = fm.getLeading();
+
+
+		// Measure the advances; the images are created on first use
+
+		images = new BufferedImage[CHARACTERS.length()];
+		imageX = new int[CHARACTERS.length()];
+		imageY = new int[CHARACTERS.length()];
+		advances = new int[CHARACTERS.length()];
+
+		for (int i = 0; i < CHARACTERS.length(); i++) {
+			advances[i] = fm.charWidth(CHARACTERS.charAt(i));
+		}
+	}
+
+
+	/**
+	 * Rasterize a glyph, trimming the image to the pixel bounds of the glyph
+	 *
+	 * @param index the index of the glyph
+	 * @return the image, or null if the glyph has no visible pixels
+	 */
+	private BufferedImage rasterize(int index) {
+
+		FontRenderContext frc = new FontRenderContext(null,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+				RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+		Rectangle bounds = font.createGlyphVector(frc, CHARACTERS.substring(index, index + 1))
+				.getPixelBounds(frc, 0, 0);
+		if (bounds.isEmpty()) return null;
+
+
+		// Leave a pixel around the bounds for the antialiasing
+
+		bounds.grow(1, 1);
+
+		BufferedImage image = Sprites.createCompatibleImage(bounds.width, bounds.height);
+		Graphics2D g = image.createGraphics();
+		setHints(g);
+		g.setFont(font);
+		g.setColor(color);
+		g.drawString(CHARACTERS.substring(index, index + 1), -bounds.x, -bounds.y);
+		g.dispose();
+
+		imageX[index] = bounds.x;
+		imageY[index] = bounds.y;
+		images[index] = image;
+
+		return image;
+	}
+
+
+	/**
+	 * Set the rendering hints used to draw the glyphs
+	 *
+	 * @param g the graphics object
+	 */
+	private static void setHints(Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+				RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+	}
+
+
+	/**
+	 * Get the font
+	 *
+	 * @return the font
+	 */
+	public Font getFont() {
+		return font;
+	}
+
+
+	/**
+	 * Get the color
+	 *
+	 * @return the color
+	 */
+	public Color getColor() {
+		return color;
+	}
+
+
+	/**
+	 * Release the rasterized glyphs; they are rasterized again if needed
+	 */
+	public void flush() {
+		for (int i = 0; i < images.length; i++) images[i] = null;
+	}
+
+
+	/**
+	 * Get the height of a line of text
+	 *
+	 * @return the line height
+	 */
+	public int getHeight() {
+		return ascent + descent + leading;
+	}
+
+
+	/**
+	 * Get the ascent
+	 *
+	 * @return the ascent
+	 */
+	public int getAscent() {
+		return ascent;
+	}
+
+
+	/**
+	 * Get the index of a glyph
+	 *
+	 * @param c the character
+	 * @return the index, or -1 if there is no glyph for the character
+	 */
+	private static int indexOf(char c) {
+		if (c >= '0' && c <= '9') return c - '0';
+		if (c == '-') return 10;
+		return -1;
+	}
+
+
+	/**
+	 * Compute the width of a string
+	 *
+	 * @param text the characters
+	 * @param offset the index of the first character
+	 * @param length the number of characters
+	 * @return the width in pixels
+	 */
+	public int charsWidth(char[] text, int offset, int length) {
+
+		int w = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int g = indexOf(text[i]);
+			if (g >= 0) w += advances[g];
+		}
+
+		return w;
+	}
+
+
+	/**
+	 * Draw a string. Characters without a glyph are skipped.
+	 *
+	 * @param g the graphics object
+	 * @param text the characters
+	 * @param offset the index of the first character
+	 * @param length the number of characters
+	 * @param x the X coordinate of the start of the baseline
+	 * @param y the Y coordinate of the baseline
+	 */
+	public void drawChars(Graphics2D g, char[] text, int offset, int length, int x, int y) {
+
+		for (int i = offset; i < offset + length; i++) {
+			int c = indexOf(text[i]);
+			if (c < 0) continue;
+
+			BufferedImage image = images[c];
+			if (image == null) image = rasterize(c);
+			if (image != null) g.drawImage(image, x + imageX[c], y + imageY[c], null);
+			x += advances[c];
+		}
+	}
+}
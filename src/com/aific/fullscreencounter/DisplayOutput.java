@@ -0,0 +1,141 @@
+package com.aific.fullscreencounter;
+
+import java.awt.BufferCapabilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GraphicsDevice;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Window;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+
+import javax.swing.JFrame;
+
+
+/**
+ * A full-screen window on one display that shows frames rendered elsewhere,
+ * so that the cost of an additional display is a single image copy
+ *
+ * @author Peter Macko
+ */
+public class DisplayOutput {
+
+	private GraphicsDevice device;
+	private Window window;
+	private boolean ownsWindow;
+	private BufferStrategy strategy;
+
+
+	/**
+	 * Create an instance of class DisplayOutput
+	 *
+	 * @param device the display
+	 * @param window the full-screen window on the display, or null to
+	 *               create a new one
+	 */
+	public DisplayOutput(GraphicsDevice device, Window window) {
+		this.device = device;
+		this.window = window;
+		this.ownsWindow = window == null;
+	}
+
+
+	/**
+	 * Get the display
+	 *
+	 * @return the display
+	 */
+	public GraphicsDevice getDevice() {
+		return device;
+	}
+
+
+	/**
+	 * Get the size of the display
+	 *
+	 * @return the size
+	 */
+	public Dimension getSize() {
+		Rectangle r = device.getDefaultConfiguration().getBounds();
+		return new Dimension(r.width, r.height);
+	}
+
+
+	/**
+	 * Show the window in the full-screen mode, if it was created by this
+	 * object, and create the buffer strategy
+	 *
+	 * @param title the window title
+	 * @param keys the key listener for the window
+	 */
+	public void open(String title, KeyListener keys) {
+
+		if (ownsWindow && window == null) {
+			JFrame f = new JFrame(title, device.getDefaultConfiguration());
+			f.setUndecorated(true);
+			f.setBackground(Color.BLACK);
+			f.setIgnoreRepaint(true);
+			f.getContentPane().setIgnoreRepaint(true);
+			f.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+			f.addKeyListener(keys);
+			window = f;
+
+			if (device.isFullScreenSupported()) {
+				device.setFullScreenWindow(f);
+			}
+			else {
+				f.setBounds(device.getDefaultConfiguration().getBounds());
+				f.setVisible(true);
+			}
+		}
+
+		BufferCapabilities caps = window.getGraphicsConfiguration().getBufferCapabilities();
+		window.createBufferStrategy(caps.isPageFlipping() ? 3 : 2);
+		strategy = window.getBufferStrategy();
+	}
+
+
+	/**
+	 * Close the window, if it was created by this object
+	 */
+	public void close() {
+
+		strategy = null;
+
+		if (ownsWindow && window != null) {
+			if (device.getFullScreenWindow() == window) device.setFullScreenWindow(null);
+			window.dispose();
+			window = null;
+		}
+	}
+
+
+	/**
+	 * Copy a frame to the display
+	 *
+	 * @param frame the frame, which should be the size of the display
+	 */
+	public void show(Image frame) {
+
+		BufferStrategy s = strategy;
+		if (s == null) return;
+
+		do {
+			do {
+				Graphics g = s.getDrawGraphics();
+				try {
+					g.drawImage(frame, 0, 0, null);
+				}
+				finally {
+					g.dispose();
+				}
+			}
+			while (s.contentsRestored());
+
+			s.show();
+		}
+		while (s.contentsLost());
+	}
+}
@@ -0,0 +1,182 @@
+package com.aific.fullscreencounter;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * Exports a sequence of counter frames to PNG files, one file per value.
+ * The frames are drawn one at a time, since the renderer is not thread
+ * safe, but they are encoded in parallel on a thread pool. The frames are
+ * drawn into a fixed pool of images that are reused once encoded, so the
+ * memory use does not depend on the number of frames. This works with
+ * java.awt.headless=true.
+ *
+ * @author Peter Macko
+ */
+public class FrameExporter {
+
+	private CounterRenderer renderer;
+	private File directory;
+	private String prefix;
+	private int threads;
+
+
+	/**
+	 * Create an instance of class FrameExporter
+	 *
+	 * @param renderer the renderer
+	 * @param directory the output directory
+	 * @param prefix the file name prefix
+	 */
+	public FrameExporter(CounterRenderer renderer, File directory, String prefix) {
+		this.renderer = renderer;
+		this.directory = directory;
+		this.prefix = prefix;
+		this.threads = Runtime.getRuntime().availableProcessors();
+	}
+
+
+	/**
+	 * Set the number of encoding threads
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+
+	/**
+	 * Get the file for a frame
+	 *
+	 * @param frame the frame index
+	 * @return the file
+	 */
+	public File getFile(int frame) {
+		return new File(directory, String.format("%s%06d.png", prefix, frame));
+	}
+
+
+	/**
+	 * Export the frames for all values from the first to the last value,
+	 * inclusive. The frames are numbered from 0.
+	 *
+	 * @param from the first value
+	 * @param to the last value
+	 * @return the number of exported frames
+	 * @throws IOException if a frame cannot be written
+	 */
+	public int export(int from, int to) throws IOException {
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+
+		int step = to >= from ? 1 : -1;
+		int count = Math.abs(to - from) + 1;
+
+
+		// The pool of images, enough to keep all encoding threads busy while
+		// the next frame is drawn
+
+		Dimension size = renderer.getSize();
+		final ArrayBlockingQueue<BufferedImage> images
+			= new ArrayBlockingQueue<BufferedImage>(threads + 1);
+		for (int i = 0; i < threads + 1; i++) {
+			images.add(new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> pending = new ArrayList<Future<?>>();
+
+		try {
+			for (int i = 0; i < count; i++) {
+
+				final BufferedImage image = images.take();
+
+				renderer.setValue(from + i * step);
+				Graphics2D g = image.createGraphics();
+				try {
+					renderer.paint(g);
+				}
+				finally {
+					g.dispose();
+				}
+
+				final File file = getFile(i);
+				pending.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						try {
+							if (!ImageIO.write(image, "png", file)) {
+								throw new IOException("No PNG writer");
+							}
+						}
+						finally {
+							images.add(image);
+						}
+						return null;
+					}
+				}));
+
+
+				// Report the errors early and forget the finished frames
+
+				if (pending.size() > 4 * threads) checkPending(pending, false);
+			}
+
+			checkPending(pending, true);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted");
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Check the results of the submitted encoding tasks and remove the
+	 * finished ones
+	 *
+	 * @param pending the submitted tasks
+	 * @param wait true to wait for all tasks to finish
+	 * @throws IOException if a frame could not be written
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static void checkPending(ArrayList<Future<?>> pending, boolean wait)
+			throws IOException, InterruptedException {
+
+		for (int i = pending.size() - 1; i >= 0; i--) {
+			Future<?> f = pending.get(i);
+			if (!wait && !f.isDone()) continue;
+
+			try {
+				f.get();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+
+			pending.remove(i);
+		}
+	}
+}
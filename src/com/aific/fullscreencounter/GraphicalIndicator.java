@@ -1,53 +1,123 @@
-/*
- * Full Screen Counter
- *
- * Copyright (c) 2012, Peter Macko <pmacko@gmail.com>
- * All rights reserved.
- *
- * Redistribution and use in source and binary forms, with or without
- * modification, are permitted provided that the following conditions
- * are met:
- *   1. Redistributions of source code must retain the above copyright
- *      notice, this list of conditions and the following disclaimer.
- *   2. Redistributions in binary form must reproduce the above copyright
- *      notice, this list of conditions and the following disclaimer in the
- *      documentation and/or other materials provided with the distribution.
- *   3. Neither the name of the copyright holder nor the names of its
- *      contributors may be used to endorse or promote products derived from
- *      this software without specific prior written permission.
- *   
- * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
- * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
- * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
- * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
- * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
- * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
- * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
- * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
- * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
- * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
- * POSSIBILITY OF SUCH DAMAGE.
- */
-
-package com.aific.fullscreencounter;
-
-import javax.swing.JComponent;
-
-
-/**
- * An abstract graphical progress indicator
- * 
- * @author Peter Macko
- */
-public abstract class GraphicalIndicator extends JComponent {
-	
-	private static final long serialVersionUID = 1L;
-
-	
-	/**
-	 * Set the value
-	 * 
-	 * @param value the new value
-	 */
-	public abstract void setValue(int value);
-}
+/*
+ * Full Screen Counter
+ *
+ * Copyright (c) 2012, Peter Macko <pmacko@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *   1. Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *   2. Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *   3. Neither the name of the copyright holder nor the names of its
+ *      contributors may be used to endorse or promote products derived from
+ *      this software without specific prior written permission.
+ *   
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.aific.fullscreencounter;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+
+import javax.swing.JComponent;
+
+
+/**
+ * An abstract graphical progress indicator
+ * 
+ * @author Peter Macko
+ */
+public abstract class GraphicalIndicator extends JComponent {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/// The opacity of the component, which is less than 1 while fading in
+	private float alpha = 1;
+
+	
+	/**
+	 * Set the value
+	 * 
+	 * @param value the new value
+	 */
+	public abstract void setValue(int value);
+	
+	
+	/**
+	 * Paint the indicator into the given area, independently of the size
+	 * of the component
+	 * 
+	 * @param g the graphics context
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 */
+	public abstract void paintIndicator(Graphics2D g, int width, int height);
+	
+	
+	/**
+	 * Set the opacity of the component, such as while it is fading in. The
+	 * component is not opaque while partially transparent, so that Swing
+	 * paints the parent underneath it first.
+	 * 
+	 * @param alpha the opacity between 0 and 1
+	 */
+	public void setAlpha(float alpha) {
+		
+		if (this.alpha == alpha) return;
+		
+		this.alpha = alpha;
+		setOpaque(alpha >= 1);
+		repaint();
+	}
+	
+	
+	/**
+	 * Get the opacity of the component
+	 * 
+	 * @return the opacity between 0 and 1
+	 */
+	public float getAlpha() {
+		return alpha;
+	}
+	
+	
+	/**
+	 * Paint the component, blending it with the parent if it is partially
+	 * transparent
+	 * 
+	 * @param g the graphics context
+	 */
+	@Override
+	public void paint(Graphics g) {
+		
+		if (alpha >= 1) {
+			super.paint(g);
+			return;
+		}
+		
+		Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			g2.setComposite(AlphaComposite.SrcOver.derive(alpha));
+			super.paint(g2);
+		}
+		finally {
+			g2.dispose();
+		}
+	}
+}
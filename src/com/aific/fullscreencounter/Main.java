@@ -33,6 +33,11 @@ package com.aific.fullscreencounter;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Date;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -58,6 +63,16 @@ public class Main extends JFrame implements ActionListener {
 	};
 
 	
+	/// The interval between forcing the journal to the disk in milliseconds,
+	/// which can be overridden by the fullscreencounter.journal.interval
+	/// system property
+	private static final long JOURNAL_FORCE_INTERVAL = 1000;
+	
+	
+	/// The journal record to resume from, or null if not resuming
+	private CounterJournal.Entry resumeEntry;
+	
+	
 	///
 	/// The components
 	///
@@ -86,6 +101,12 @@ public class Main extends JFrame implements ActionListener {
 	private JComboBox graphicalIndicatorCombo;
 	private JLabel reachedTextLabel;
 	private JTextField reachedTextField;
+	private JCheckBox activeRenderingCheck;
+	private JCheckBox multiDisplayCheck;
+	private JLabel portLabel;
+	private JTextField portField;
+	private JLabel addressLabel;
+	private JTextField addressField;
 
 	private JLabel copyrightLabel;
 	private JButton startButton;
@@ -299,6 +320,61 @@ public class Main extends JFrame implements ActionListener {
 		panel.add(reachedTextField, c);
 
 		gridy++;
+		
+		
+		// Rendering mode
+		
+		activeRenderingCheck = new JCheckBox("Active rendering (page flipping)");
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 1;
+		c.gridy = gridy;
+		panel.add(activeRenderingCheck, c);
+
+		gridy++;
+		
+		multiDisplayCheck = new JCheckBox("Show on all displays");
+		multiDisplayCheck.setEnabled(GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getScreenDevices().length > 1);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 1;
+		c.gridy = gridy;
+		panel.add(multiDisplayCheck, c);
+
+		gridy++;
+		
+		
+		// Network commands
+		
+		portLabel = new JLabel("Network Port: ");
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0;
+		c.gridy = gridy;
+		panel.add(portLabel, c);
+
+		portField = new JTextField("");
+		portField.setToolTipText("The TCP and UDP port for the +N, -N and =N commands (leave blank to disable)");
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 1;
+		c.gridy = gridy;
+		panel.add(portField, c);
+
+		gridy++;
+		
+		addressLabel = new JLabel("Network Address: ");
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0;
+		c.gridy = gridy;
+		panel.add(addressLabel, c);
+
+		addressField = new JTextField("");
+		addressField.setToolTipText("The address to listen on, such as 0.0.0.0 for all interfaces"
+				+ " (leave blank to accept the commands only from this computer)");
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 1;
+		c.gridy = gridy;
+		panel.add(addressField, c);
+
+		gridy++;
 
 
 		//
@@ -340,6 +416,7 @@ public class Main extends JFrame implements ActionListener {
 				"<html><body><ul>"
 				+ "<li><i>Space</i> &ndash; Increment the counter</li>"
 				+ "<li><i>Backspace</i> &ndash; Decrement the counter</li>"
+				+ "<li><i>F3</i> &ndash; Show or hide the latency and frame time statistics</li>"
 				+ "<li><i>Escape</i> &ndash; Exit the program</li>"
 				+ "</body></ul></html>"), c);
 		c.weightx = 0;
@@ -411,6 +488,13 @@ public class Main extends JFrame implements ActionListener {
 	 * @param args the command-line arguments
 	 */
 	public static void main(String[] args) {
+		
+		
+		// Export the frames instead of showing the counter
+		
+		if (args.length > 0 && "--export".equals(args[0])) {
+			System.exit(export(args));
+		}
 
 
 		// Set-up platform-specific properties
@@ -428,6 +512,149 @@ public class Main extends JFrame implements ActionListener {
 		
 		Main frame = new Main();
 		frame.setVisible(true);
+		frame.offerResume();
+	}
+
+
+	/**
+	 * Offer to resume from the last value recorded in the journal
+	 */
+	private void offerResume() {
+		
+		CounterJournal.Entry e = CounterJournal.recover(CounterJournal.getDefaultFile());
+		if (e == null || e.getStart() >= e.getGoal()) return;
+		
+		String message = "Resume the previous counter at " + e.getValue()
+				+ " (goal " + e.getGoal() + "), last recorded on "
+				+ new Date(e.getTime()) + "?";
+		
+		if (JOptionPane.showConfirmDialog(this, message, getTitle(),
+				JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) != JOptionPane.YES_OPTION) {
+			return;
+		}
+		
+		startValueField.setText("" + e.getStart());
+		goalValueField.setText("" + e.getGoal());
+		resumeEntry = e;
+	}
+	
+	
+	/**
+	 * Export a sequence of frames to PNG files without a display. The
+	 * arguments are:
+	 * 
+	 * --export DIR [--start N] [--goal N] [--from N] [--to N] [--size WxH]
+	 *     [--indicator none|thermometer|stars] [--text TEXT] [--threads N]
+	 * 
+	 * @param args the command-line arguments
+	 * @return the exit code
+	 */
+	private static int export(String[] args) {
+		
+		String directory = null;
+		int startValue = 0;
+		int goalValue = 50;
+		Integer from = null;
+		Integer to = null;
+		Dimension size = new Dimension(1920, 1080);
+		GraphicalIndicatorEnum indicator = GraphicalIndicatorEnum.STARS;
+		String text = "Goal Reached!";
+		int threads = Runtime.getRuntime().availableProcessors();
+		
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				
+				if (i + 1 >= args.length) throw new IllegalArgumentException(args[i]);
+				String a = args[i];
+				String v = args[i + 1];
+				
+				if ("--export".equals(a)) {
+					directory = v;
+				}
+				else if ("--start".equals(a)) {
+					startValue = Integer.parseInt(v);
+				}
+				else if ("--goal".equals(a)) {
+					goalValue = Integer.parseInt(v);
+				}
+				else if ("--from".equals(a)) {
+					from = Integer.valueOf(v);
+				}
+				else if ("--to".equals(a)) {
+					to = Integer.valueOf(v);
+				}
+				else if ("--size".equals(a)) {
+					int x = v.indexOf('x');
+					size = new Dimension(Integer.parseInt(v.substring(0, x)),
+							Integer.parseInt(v.substring(x + 1)));
+				}
+				else if ("--indicator".equals(a)) {
+					indicator = GraphicalIndicatorEnum.valueOf(v.toUpperCase());
+				}
+				else if ("--text".equals(a)) {
+					text = v;
+				}
+				else if ("--threads".equals(a)) {
+					threads = Integer.parseInt(v);
+				}
+				else {
+					throw new IllegalArgumentException(a);
+				}
+			}
+			
+			if (startValue >= goalValue) {
+				throw new IllegalArgumentException("The goal value must be larger than the start value");
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Invalid argument: " + e.getMessage());
+			System.err.println("Usage: --export DIR [--start N] [--goal N] [--from N] [--to N]"
+					+ " [--size WxH] [--indicator none|thermometer|stars] [--text TEXT]"
+					+ " [--threads N]");
+			return 1;
+		}
+		
+		
+		// Use the same appearance as the default settings in the main window
+		
+		int alpha = indicator == GraphicalIndicatorEnum.STARS ? 178 : 255;
+		
+		final CounterRenderer renderer = new CounterRenderer(size, startValue, goalValue,
+				Utils.withAlpha(Color.WHITE, alpha), Color.BLACK,
+				Utils.withAlpha(new Color(75, 75, 255), alpha), new Color(24, 24, 24),
+				indicator == GraphicalIndicatorEnum.STARS ? 0.75 : 1.0,
+				indicator, text);
+		renderer.prepareIndicators();
+		
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					renderer.createIndicators();
+				}
+			});
+		}
+		catch (Exception e) {
+			System.err.println("Error: " + e.getMessage());
+			return 1;
+		}
+		
+		FrameExporter exporter = new FrameExporter(renderer, new File(directory), "counter-");
+		exporter.setThreads(threads);
+		
+		try {
+			long t = System.currentTimeMillis();
+			int n = exporter.export(from == null ? startValue : from.intValue(),
+					to == null ? goalValue : to.intValue());
+			System.out.println("Exported " + n + " frames to " + directory
+					+ " in " + (System.currentTimeMillis() - t) + " ms");
+		}
+		catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			return 1;
+		}
+		
+		return 0;
 	}
 
 
@@ -498,6 +725,35 @@ public class Main extends JFrame implements ActionListener {
 				return;
 			}
 			
+			int port = 0;
+			String portText = portField.getText().trim();
+			
+			if (!"".equals(portText)) {
+				try {
+					port = Integer.parseInt(portText);
+					if (port <= 0 || port > 65535) throw new NumberFormatException();
+				}
+				catch (NumberFormatException ex) {
+					JOptionPane.showMessageDialog(this, "The network port must be between 1 and 65535",
+							"Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+			}
+			
+			InetAddress address = null;
+			String addressText = addressField.getText().trim();
+			
+			if (!"".equals(addressText)) {
+				try {
+					address = InetAddress.getByName(addressText);
+				}
+				catch (UnknownHostException ex) {
+					JOptionPane.showMessageDialog(this, "Unknown network address: " + addressText,
+							"Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+			}
+			
 			GraphicalIndicatorEnum indicator =
 					(GraphicalIndicatorEnum) graphicalIndicatorCombo.getSelectedItem();
 			
@@ -512,6 +768,41 @@ public class Main extends JFrame implements ActionListener {
 					indicator,
 					reachedTextField.getText());
 			
+			cf.setActiveRendering(activeRenderingCheck.isSelected());
+			cf.setMultiDisplay(multiDisplayCheck.isSelected());
+			
+			
+			// Resume the previous count, unless the start or the goal changed
+			
+			if (resumeEntry != null && resumeEntry.getStart() == startValue
+					&& resumeEntry.getGoal() == goalValue) {
+				cf.setInitialValue((int) Math.min(Integer.MAX_VALUE, resumeEntry.getValue()));
+			}
+			
+			
+			if (port > 0) {
+				try {
+					cf.startCommandListener(address, port);
+				}
+				catch (IOException ex) {
+					cf.dispose();
+					JOptionPane.showMessageDialog(this, "Cannot listen on port " + port + ": " + ex.getMessage(),
+							"Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+			}
+			
+			
+			// Record the count in the journal
+			
+			try {
+				cf.setJournal(new CounterJournal(CounterJournal.getDefaultFile(),
+						Long.getLong("fullscreencounter.journal.interval", JOURNAL_FORCE_INTERVAL)));
+			}
+			catch (IOException ex) {
+				System.err.println("Cannot open the journal: " + ex.getMessage());
+			}
+			
 			dispose();
 			cf.start();
 		}
@@ -0,0 +1,170 @@
+package com.aific.fullscreencounter;
+
+import java.util.Random;
+
+
+/**
+ * A Poisson-disk layout of points in a rectangle, generated using Bridson's
+ * algorithm in time linear in the number of points. The points are all at
+ * least the minimum distance apart, and no more points can be added without
+ * violating that constraint (up to the sampling limit of the algorithm), so
+ * the number of points is the capacity of the rectangle.
+ *
+ * <p>The points are returned in a random order, so that any prefix of the
+ * layout is spread over the entire area.</p>
+ *
+ * @author Peter Macko
+ */
+public class PoissonDiskLayout {
+
+	/// The number of candidates to try around each active point
+	private static final int CANDIDATES = 30;
+
+	private int width;
+	private int height;
+	private double minDist;
+
+	private int[] xs;
+	private int[] ys;
+
+
+	/**
+	 * Create an instance of class PoissonDiskLayout
+	 *
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @param minDist the minimum distance between two points
+	 * @param random the random number generator
+	 */
+	public PoissonDiskLayout(int width, int height, double minDist, Random random) {
+
+		this.width   = Math.max(1, width);
+		this.height  = Math.max(1, height);
+		this.minDist = minDist;
+
+		SpatialGrid grid = new SpatialGrid(this.width, this.height, minDist);
+
+
+		// Bridson's algorithm: start with a random point, and then repeatedly
+		// pick a random active point and try to place candidates in the
+		// annulus between minDist and 2 * minDist around it. A point that does
+		// not admit any new candidates becomes inactive.
+
+		int[] active = new int[16];
+		int activeCount = 0;
+
+		active[activeCount++] = grid.add(random.nextInt(this.width),
+				random.nextInt(this.height));
+
+		while (activeCount > 0) {
+
+			int a = random.nextInt(activeCount);
+			int p = active[a];
+			int px = grid.getX(p);
+			int py = grid.getY(p);
+			boolean found = false;
+
+			for (int k = 0; k < CANDIDATES; k++) {
+
+				double angle = 2 * Math.PI * random.nextDouble();
+				double r = minDist * (1 + random.nextDouble());
+				int x = (int) Math.round(px + r * Math.cos(angle));
+				int y = (int) Math.round(py + r * Math.sin(angle));
+
+				if (x < 0 || y < 0 || x >= this.width || y >= this.height) continue;
+				if (!grid.isFarEnough(x, y)) continue;
+
+				if (activeCount == active.length) {
+					int[] n = new int[2 * activeCount];
+					System.arraycopy(active, 0, n, 0, activeCount);
+					active = n;
+				}
+
+				active[activeCount++] = grid.add(x, y);
+				found = true;
+				break;
+			}
+
+			if (!found) {
+				active[a] = active[--activeCount];
+			}
+		}
+
+
+		// Copy the points out of the grid in a random order
+
+		int n = grid.size();
+		xs = new int[n];
+		ys = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			int j = random.nextInt(i + 1);
+			xs[i] = xs[j];
+			ys[i] = ys[j];
+			xs[j] = grid.getX(i);
+			ys[j] = grid.getY(i);
+		}
+	}
+
+
+	/**
+	 * Get the width of the area
+	 *
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+
+	/**
+	 * Get the height of the area
+	 *
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+
+	/**
+	 * Get the minimum distance between two points
+	 *
+	 * @return the minimum distance
+	 */
+	public double getMinDist() {
+		return minDist;
+	}
+
+
+	/**
+	 * Get the capacity of the layout, i.e. the number of points
+	 *
+	 * @return the number of points
+	 */
+	public int getCapacity() {
+		return xs.length;
+	}
+
+
+	/**
+	 * Get the X coordinate of a point
+	 *
+	 * @param index the point index
+	 * @return the X coordinate
+	 */
+	public int getX(int index) {
+		return xs[index];
+	}
+
+
+	/**
+	 * Get the Y coordinate of a point
+	 *
+	 * @param index the point index
+	 * @return the Y coordinate
+	 */
+	public int getY(int index) {
+		return ys[index];
+	}
+}
@@ -0,0 +1,187 @@
+package com.aific.fullscreencounter;
+
+
+/**
+ * A uniform grid spatial index of points that are all at least a minimum
+ * distance apart from each other. The cell size is chosen so that each cell
+ * can contain at most one point, which makes the neighbor check O(1).
+ *
+ * @author Peter Macko
+ */
+public class SpatialGrid {
+
+	private double minDist;
+	private double minDistSq;
+	private double cellSize;
+
+	private int columns;
+	private int rows;
+
+	/// The index of the point in each cell plus one, or 0 if the cell is empty
+	private int[] cells;
+
+	private int[] xs;
+	private int[] ys;
+	private int count;
+
+
+	/**
+	 * Create an instance of class SpatialGrid
+	 *
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @param minDist the minimum distance between two points
+	 */
+	public SpatialGrid(int width, int height, double minDist) {
+
+		if (minDist <= 0) {
+			throw new IllegalArgumentException("minDist <= 0");
+		}
+
+		this.minDist   = minDist;
+		this.minDistSq = minDist * minDist;
+		this.cellSize  = minDist / Math.sqrt(2);
+
+		columns = Math.max(1, (int) Math.ceil(Math.max(1, width ) / cellSize));
+		rows    = Math.max(1, (int) Math.ceil(Math.max(1, height) / cellSize));
+		cells   = new int[columns * rows];
+
+		xs = new int[16];
+		ys = new int[16];
+		count = 0;
+	}
+
+
+	/**
+	 * Get the minimum distance between two points
+	 *
+	 * @return the minimum distance
+	 */
+	public double getMinDist() {
+		return minDist;
+	}
+
+
+	/**
+	 * Get the number of points in the grid
+	 *
+	 * @return the number of points
+	 */
+	public int size() {
+		return count;
+	}
+
+
+	/**
+	 * Get the X coordinate of a point
+	 *
+	 * @param index the point index
+	 * @return the X coordinate
+	 */
+	public int getX(int index) {
+		return xs[index];
+	}
+
+
+	/**
+	 * Get the Y coordinate of a point
+	 *
+	 * @param index the point index
+	 * @return the Y coordinate
+	 */
+	public int getY(int index) {
+		return ys[index];
+	}
+
+
+	/**
+	 * Determine if the given coordinates are a minimum distance away from all
+	 * of the points in the grid.
+	 *
+	 * @param x the X coordinate
+	 * @param y the Y coordinate
+	 * @return true if it is far enough
+	 */
+	public boolean isFarEnough(int x, int y) {
+
+		int cx = column(x);
+		int cy = row(y);
+
+
+		// A point closer than minDist can be at most two cells away
+
+		int x0 = Math.max(0, cx - 2);
+		int x1 = Math.min(columns - 1, cx + 2);
+		int y0 = Math.max(0, cy - 2);
+		int y1 = Math.min(rows - 1, cy + 2);
+
+		for (int j = y0; j <= y1; j++) {
+			for (int i = x0; i <= x1; i++) {
+				int p = cells[j * columns + i] - 1;
+				if (p < 0) continue;
+
+				long dx = x - xs[p];
+				long dy = y - ys[p];
+				if (dx * dx + dy * dy < minDistSq) return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Add a point. The caller is responsible for checking that the point is
+	 * far enough from all other points using {@link #isFarEnough(int, int)}.
+	 *
+	 * @param x the X coordinate
+	 * @param y the Y coordinate
+	 * @return the index of the new point
+	 */
+	public int add(int x, int y) {
+
+		int cell = row(y) * columns + column(x);
+		if (cells[cell] != 0) {
+			throw new IllegalStateException("The grid cell is already occupied");
+		}
+
+		if (count == xs.length) {
+			int[] nxs = new int[2 * count];
+			int[] nys = new int[2 * count];
+			System.arraycopy(xs, 0, nxs, 0, count);
+			System.arraycopy(ys, 0, nys, 0, count);
+			xs = nxs;
+			ys = nys;
+		}
+
+		xs[count] = x;
+		ys[count] = y;
+		cells[cell] = ++count;
+
+		return count - 1;
+	}
+
+
+	/**
+	 * Get the grid column of the given X coordinate
+	 *
+	 * @param x the X coordinate
+	 * @return the column
+	 */
+	private int column(int x) {
+		int c = (int) (x / cellSize);
+		return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+	}
+
+
+	/**
+	 * Get the grid row of the given Y coordinate
+	 *
+	 * @param y the Y coordinate
+	 * @return the row
+	 */
+	private int row(int y) {
+		int r = (int) (y / cellSize);
+		return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+	}
+}
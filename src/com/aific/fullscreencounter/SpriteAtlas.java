@@ -0,0 +1,189 @@
+package com.aific.fullscreencounter;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+
+/**
+ * A sprite atlas that packs many small images into a single image, so that
+ * drawing different sprites does not require switching the source surface.
+ * The sprites are packed into horizontal shelves, and the atlas grows
+ * downwards as sprites are added.
+ *
+ * @author Peter Macko
+ */
+public class SpriteAtlas {
+
+	private BufferedImage image;
+	private int width;
+
+	private int shelfY;
+	private int shelfX;
+	private int shelfHeight;
+
+	private int[] slotX;
+	private int[] slotY;
+	private int[] slotWidth;
+	private int[] slotHeight;
+	private int slots;
+
+
+	/**
+	 * Create an instance of class SpriteAtlas
+	 *
+	 * @param width the width of the atlas
+	 * @param height the initial height of the atlas
+	 */
+	public SpriteAtlas(int width, int height) {
+
+		this.width = Math.max(1, width);
+		this.image = Sprites.createCompatibleImage(this.width, Math.max(1, height));
+
+		shelfY = 0;
+		shelfX = 0;
+		shelfHeight = 0;
+
+		slotX = new int[16];
+		slotY = new int[16];
+		slotWidth = new int[16];
+		slotHeight = new int[16];
+		slots = 0;
+	}
+
+
+	/**
+	 * Compute a good atlas width for the given sprites, so that the atlas
+	 * ends up roughly square
+	 *
+	 * @param widths the sprite widths
+	 * @param heights the sprite heights
+	 * @return the atlas width
+	 */
+	public static int suggestWidth(int[] widths, int[] heights) {
+
+		long area = 0;
+		int maxWidth = 1;
+
+		for (int i = 0; i < widths.length; i++) {
+			area += widths[i] * (long) heights[i];
+			maxWidth = Math.max(maxWidth, widths[i]);
+		}
+
+		return Math.max(maxWidth, (int) Math.ceil(Math.sqrt(area)));
+	}
+
+
+	/**
+	 * Get the atlas image
+	 *
+	 * @return the image
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+
+	/**
+	 * Get the number of sprites in the atlas
+	 *
+	 * @return the number of sprites
+	 */
+	public int size() {
+		return slots;
+	}
+
+
+	/**
+	 * Add a sprite to the atlas
+	 *
+	 * @param sprite the sprite image
+	 * @return the slot index of the sprite
+	 */
+	public int add(BufferedImage sprite) {
+
+		int w = sprite.getWidth();
+		int h = sprite.getHeight();
+
+		if (w > width) {
+			throw new IllegalArgumentException("The sprite is wider than the atlas");
+		}
+
+
+		// Find a place on the current shelf, or start a new one
+
+		if (shelfX + w > width) {
+			shelfY += shelfHeight;
+			shelfX = 0;
+			shelfHeight = 0;
+		}
+
+		if (shelfY + h > image.getHeight()) {
+			grow(Math.max(shelfY + h, 2 * image.getHeight()));
+		}
+
+
+		// Copy the sprite
+
+		Graphics2D g = image.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(sprite, shelfX, shelfY, null);
+		g.dispose();
+
+		if (slots == slotX.length) {
+			slotX = Arrays.copyOf(slotX, 2 * slots);
+			slotY = Arrays.copyOf(slotY, 2 * slots);
+			slotWidth = Arrays.copyOf(slotWidth, 2 * slots);
+			slotHeight = Arrays.copyOf(slotHeight, 2 * slots);
+		}
+
+		slotX[slots] = shelfX;
+		slotY[slots] = shelfY;
+		slotWidth[slots] = w;
+		slotHeight[slots] = h;
+
+		shelfX += w;
+		shelfHeight = Math.max(shelfHeight, h);
+
+		return slots++;
+	}
+
+
+	/**
+	 * Grow the atlas image
+	 *
+	 * @param height the new height
+	 */
+	private void grow(int height) {
+
+		BufferedImage n = Sprites.createCompatibleImage(width, height);
+
+		Graphics2D g = n.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+
+		image.flush();
+		image = n;
+	}
+
+
+	/**
+	 * Draw a sprite
+	 *
+	 * @param g the graphics object
+	 * @param slot the slot index of the sprite
+	 * @param x the X coordinate of the top left corner
+	 * @param y the Y coordinate of the top left corner
+	 */
+	public void draw(Graphics2D g, int slot, int x, int y) {
+
+		int sx = slotX[slot];
+		int sy = slotY[slot];
+		int w = slotWidth[slot];
+		int h = slotHeight[slot];
+
+		g.drawImage(image, x, y, x + w, y + h, sx, sy, sx + w, sy + h, null);
+	}
+}
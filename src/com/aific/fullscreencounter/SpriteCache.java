@@ -0,0 +1,203 @@
+package com.aific.fullscreencounter;
+
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * A persistent on-disk cache of scaled sprites. The cache lives in a
+ * directory specific to the screen resolution, and each entry is a raw
+ * ARGB dump of the scaled image together with the hash of the source
+ * resource, so that an entry is ignored (and later overwritten) once the
+ * source resource changes.
+ *
+ * <p>All errors are silently ignored, since the cache is only an
+ * optimization.</p>
+ *
+ * @author Peter Macko
+ */
+public class SpriteCache {
+
+	/// The magic number at the beginning of each cache file
+	private static final int MAGIC = 0x46534353;	// "FSCS"
+
+	/// The version of the cache file format
+	private static final int VERSION = 1;
+
+	/// The header size: magic, version, width, height, hash length
+	private static final int HEADER_SIZE = 5 * 4;
+
+	/// The default instance
+	private static SpriteCache defaultInstance = null;
+
+	private File directory;
+
+
+	/**
+	 * Create an instance of class SpriteCache
+	 *
+	 * @param directory the cache directory
+	 */
+	public SpriteCache(File directory) {
+		this.directory = directory;
+	}
+
+
+	/**
+	 * Get the default cache, keyed by the size of the default screen and
+	 * located in the directory given by the fullscreencounter.sprites
+	 * system property, or in the user's home directory if it is not set
+	 *
+	 * @return the default cache
+	 */
+	public static synchronized SpriteCache getDefault() {
+
+		if (defaultInstance == null) {
+
+			String screen = "headless";
+			if (!GraphicsEnvironment.isHeadless()) {
+				Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
+				screen = d.width + "x" + d.height;
+			}
+
+			String root = System.getProperty("fullscreencounter.sprites");
+			File dir = root != null ? new File(root) : new File(new File(
+					System.getProperty("user.home"), ".fullscreencounter"), "sprites");
+
+			defaultInstance = new SpriteCache(new File(dir, screen));
+		}
+
+		return defaultInstance;
+	}
+
+
+	/**
+	 * Get the cache file for the given sprite
+	 *
+	 * @param name the resource name
+	 * @param width the width
+	 * @param height the height
+	 * @return the file
+	 */
+	private File getFile(String name, int width, int height) {
+		return new File(directory, name.replaceAll("[^A-Za-z0-9_.-]", "_")
+				+ "-" + width + "x" + height + ".argb");
+	}
+
+
+	/**
+	 * Load a sprite from the cache
+	 *
+	 * @param name the resource name
+	 * @param hash the hash of the source resource
+	 * @param width the width
+	 * @param height the height
+	 * @return the image, or null if it is not in the cache or if it is stale
+	 */
+	public BufferedImage get(String name, byte[] hash, int width, int height) {
+
+		File file = getFile(name, width, height);
+		if (!file.isFile()) return null;
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				long length = HEADER_SIZE + hash.length + 4L * width * height;
+				if (channel.size() != length) return null;
+
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+				if (buffer.getInt() != MAGIC
+						|| buffer.getInt() != VERSION
+						|| buffer.getInt() != width
+						|| buffer.getInt() != height
+						|| buffer.getInt() != hash.length) {
+					return null;
+				}
+
+				byte[] h = new byte[hash.length];
+				buffer.get(h);
+				if (!Arrays.equals(h, hash)) return null;
+
+				int[] pixels = new int[width * height];
+				buffer.asIntBuffer().get(pixels);
+
+				BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				image.getRaster().setDataElements(0, 0, width, height, pixels);
+				return image;
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Store a sprite in the cache
+	 *
+	 * @param name the resource name
+	 * @param hash the hash of the source resource
+	 * @param image the scaled image
+	 */
+	public void put(String name, byte[] hash, BufferedImage image) {
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + hash.length + 4 * pixels.length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.putInt(hash.length);
+		buffer.put(hash);
+		IntBuffer ib = buffer.asIntBuffer();
+		ib.put(pixels);
+		buffer.rewind();
+
+
+		// Write to a temporary file first, so that a concurrent reader or a
+		// crash never leaves a partially written entry behind
+
+		File file = getFile(name, width, height);
+		File temp = new File(directory, file.getName() + ".tmp");
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) return;
+
+			RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+			try {
+				raf.setLength(0);
+				FileChannel channel = raf.getChannel();
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			finally {
+				raf.close();
+			}
+
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) temp.delete();
+			}
+		}
+		catch (IOException e) {
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package com.aific.fullscreencounter;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+
+/**
+ * Loading and scaling of sprite images. All images produced here are fully
+ * decoded and compatible with the screen, so that drawing them never blocks
+ * and does not require any format conversion.
+ *
+ * @author Peter Macko
+ */
+public class Sprites {
+
+	/// The digests and the decoded images of the resources, by the name
+	private static final HashMap<String, Source> sources = new HashMap<String, Source>();
+
+
+	/**
+	 * Get the graphics configuration of the default screen
+	 *
+	 * @return the graphics configuration, or null if running headless
+	 */
+	public static GraphicsConfiguration getGraphicsConfiguration() {
+
+		if (GraphicsEnvironment.isHeadless()) return null;
+
+		return GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice().getDefaultConfiguration();
+	}
+
+
+	/**
+	 * Create a translucent image compatible with the default screen
+	 *
+	 * @param width the width
+	 * @param height the height
+	 * @return the new image
+	 */
+	public static BufferedImage createCompatibleImage(int width, int height) {
+
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+
+		if (gc == null) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		else {
+			return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+	}
+
+
+	/**
+	 * Load an image resource
+	 *
+	 * @param name the resource name relative to this package
+	 * @return the decoded image
+	 * @throws RuntimeException if the resource cannot be loaded
+	 */
+	public static BufferedImage load(String name) {
+		return decode(name, readResource(name));
+	}
+
+
+	/**
+	 * Get the size of an image resource without decoding the entire image
+	 *
+	 * @param name the resource name relative to this package
+	 * @return the image size
+	 * @throws RuntimeException if the resource cannot be read
+	 */
+	public static Dimension getSize(String name) {
+
+		try {
+			ImageInputStream in = ImageIO.createImageInputStream(
+					new ByteArrayInputStream(readResource(name)));
+			try {
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+				if (!readers.hasNext()) {
+					throw new RuntimeException("Unsupported image format: " + name);
+				}
+
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(in);
+					return new Dimension(reader.getWidth(0), reader.getHeight(0));
+				}
+				finally {
+					reader.dispose();
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot load " + name, e);
+		}
+	}
+
+
+	/**
+	 * Read the raw contents of a resource
+	 *
+	 * @param name the resource name relative to this package
+	 * @return the contents
+	 * @throws RuntimeException if the resource cannot be read
+	 */
+	private static byte[] readResource(String name) {
+
+		URL url = Sprites.class.getResource(name);
+		if (url == null) {
+			throw new RuntimeException("Resource not found: " + name);
+		}
+
+		try {
+			InputStream in = url.openStream();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[64 * 1024];
+				int n;
+				while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+				return out.toByteArray();
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot load " + name, e);
+		}
+	}
+
+
+	/**
+	 * Decode an image
+	 *
+	 * @param name the resource name (for error messages)
+	 * @param data the encoded image
+	 * @return the decoded image
+	 * @throws RuntimeException if the image cannot be decoded
+	 */
+	private static BufferedImage decode(String name, byte[] data) {
+
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+			if (image == null) {
+				throw new RuntimeException("Unsupported image format: " + name);
+			}
+			return image;
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot load " + name, e);
+		}
+	}
+
+
+	/**
+	 * Compute the hash of the given data
+	 *
+	 * @param data the data
+	 * @return the SHA-1 hash
+	 */
+	private static byte[] hash(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(data);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+
+	/**
+	 * Convert an image to an image compatible with the default screen
+	 *
+	 * @param image the image
+	 * @return the compatible image, which might be the same image
+	 */
+	private static BufferedImage toCompatible(BufferedImage image) {
+
+		if (getGraphicsConfiguration() == null) return image;
+
+		BufferedImage result = createCompatibleImage(image.getWidth(), image.getHeight());
+		Graphics2D g = result.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return result;
+	}
+
+
+	/**
+	 * Get the digest and the decoded image of a resource, which are kept in
+	 * memory once loaded
+	 *
+	 * @param name the resource name relative to this package
+	 * @return the source
+	 * @throws RuntimeException if the resource cannot be read
+	 */
+	private static Source getSource(String name) {
+
+		synchronized (sources) {
+			Source source = sources.get(name);
+			if (source == null) {
+				source = new Source(name);
+				sources.put(name, source);
+			}
+			return source;
+		}
+	}
+
+
+	/**
+	 * Load image resources scaled to the given sizes, using the default
+	 * sprite cache. The source images are decoded and scaled (in parallel)
+	 * only if the scaled images are not already in the cache.
+	 *
+	 * @param names the resource names relative to this package
+	 * @param widths the target widths
+	 * @param heights the target heights
+	 * @return the scaled images, in the same order as the names
+	 */
+	public static BufferedImage[] loadScaled(String[] names, int[] widths, int[] heights) {
+
+		if (names.length != widths.length || names.length != heights.length) {
+			throw new IllegalArgumentException("The array lengths do not match");
+		}
+
+		SpriteCache cache = SpriteCache.getDefault();
+
+		BufferedImage[] result = new BufferedImage[names.length];
+		int misses = 0;
+
+
+		// Look up the images in the cache
+
+		for (int i = 0; i < names.length; i++) {
+
+			Source source = getSource(names[i]);
+
+			BufferedImage image = cache.get(names[i], source.getDigest(), widths[i], heights[i]);
+			if (image != null) {
+				result[i] = toCompatible(image);
+			}
+			else {
+				misses++;
+			}
+		}
+
+		if (misses == 0) return result;
+
+
+		// Scale the rest
+
+		BufferedImage[] missSources = new BufferedImage[misses];
+		int[] missWidths = new int[misses];
+		int[] missHeights = new int[misses];
+		int[] missIndices = new int[misses];
+
+		for (int i = 0, m = 0; i < names.length; i++) {
+			if (result[i] != null) continue;
+
+			missSources[m] = getSource(names[i]).getImage();
+			missWidths [m] = widths [i];
+			missHeights[m] = heights[i];
+			missIndices[m] = i;
+			m++;
+		}
+
+		BufferedImage[] scaled = scaleAll(missSources, missWidths, missHeights);
+
+		for (int m = 0; m < misses; m++) {
+			int i = missIndices[m];
+			result[i] = scaled[m];
+			cache.put(names[i], getSource(names[i]).getDigest(), scaled[m]);
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Scale an image to a screen-compatible image of the given size. Large
+	 * reductions are done in several bilinear steps that halve the image,
+	 * which gives a quality comparable to area averaging at a fraction of the
+	 * cost.
+	 *
+	 * @param source the source image
+	 * @param width the target width
+	 * @param height the target height
+	 * @return the scaled image
+	 */
+	public static BufferedImage scale(BufferedImage source, int width, int height) {
+
+		width  = Math.max(1, width);
+		height = Math.max(1, height);
+
+		BufferedImage current = source;
+		int w = source.getWidth();
+		int h = source.getHeight();
+
+		do {
+			if (w > width ) w = Math.max(width , w / 2);
+			if (h > height) h = Math.max(height, h / 2);
+			if (w < width ) w = width;
+			if (h < height) h = height;
+
+			BufferedImage next = w == width && h == height
+					? createCompatibleImage(w, h)
+					: new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+
+			Graphics2D g = next.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					current.getWidth() < w || current.getHeight() < h
+					? RenderingHints.VALUE_INTERPOLATION_BICUBIC
+					: RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING,
+					RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(current, 0, 0, w, h, null);
+			g.dispose();
+
+			current = next;
+		}
+		while (w != width || h != height);
+
+		return current;
+	}
+
+
+	/**
+	 * Scale several images in parallel on the common fork-join pool, or in
+	 * the calling thread if the pool cannot run more than one task at a
+	 * time, in which case splitting the work only adds overhead
+	 *
+	 * @param sources the source images
+	 * @param widths the target widths
+	 * @param heights the target heights
+	 * @return the scaled images, in the same order as the sources
+	 */
+	public static BufferedImage[] scaleAll(BufferedImage[] sources, int[] widths, int[] heights) {
+
+		if (sources.length != widths.length || sources.length != heights.length) {
+			throw new IllegalArgumentException("The array lengths do not match");
+		}
+
+		BufferedImage[] result = new BufferedImage[sources.length];
+
+		if (ForkJoinPool.getCommonPoolParallelism() <= 1) {
+			for (int i = 0; i < sources.length; i++) {
+				result[i] = scale(sources[i], widths[i], heights[i]);
+			}
+			return result;
+		}
+
+		ForkJoinPool.commonPool().invoke(new ScaleTask(sources, widths, heights, result,
+				0, sources.length));
+		return result;
+	}
+
+
+	/**
+	 * A fork-join task that scales a range of images
+	 */
+	private static class ScaleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private BufferedImage[] sources;
+		private int[] widths;
+		private int[] heights;
+		private BufferedImage[] result;
+		private int from;
+		private int to;
+
+
+		/**
+		 * Create an instance of class ScaleTask
+		 *
+		 * @param sources the source images
+		 * @param widths the target widths
+		 * @param heights the target heights
+		 * @param result the array for the scaled images
+		 * @param from the first index (inclusive)
+		 * @param to the last index (exclusive)
+		 */
+		public ScaleTask(BufferedImage[] sources, int[] widths, int[] heights,
+				BufferedImage[] result, int from, int to) {
+			this.sources = sources;
+			this.widths = widths;
+			this.heights = heights;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+
+		/**
+		 * Scale the images, splitting the range if it has more than one
+		 */
+		@Override
+		protected void compute() {
+
+			if (to - from <= 1) {
+				if (to > from) result[from] = scale(sources[from], widths[from], heights[from]);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new ScaleTask(sources, widths, heights, result, from, mid),
+					new ScaleTask(sources, widths, heights, result, mid, to));
+		}
+	}
+
+
+	/**
+	 * A source image resource: its digest, which identifies the scaled
+	 * images in the sprite cache, and the decoded image, which is decoded
+	 * only when something needs to be scaled
+	 */
+	private static class Source {
+
+		private String name;
+		private byte[] digest;
+
+		/// The encoded image, kept only until it is decoded
+		private byte[] data;
+
+		/// The decoded image, or null if not decoded yet
+		private BufferedImage image;
+
+
+		/**
+		 * Create an instance of class Source
+		 *
+		 * @param name the resource name relative to the Sprites class
+		 * @throws RuntimeException if the resource cannot be read
+		 */
+		public Source(String name) {
+			this.name = name;
+			this.data = readResource(name);
+			this.digest = hash(data);
+			this.image = null;
+		}
+
+
+		/**
+		 * Get the digest of the encoded image
+		 *
+		 * @return the SHA-1 hash
+		 */
+		public byte[] getDigest() {
+			return digest;
+		}
+
+
+		/**
+		 * Get the decoded image, decoding it if this is the first time it
+		 * is needed. The image is shared, so it must not be modified.
+		 *
+		 * @return the decoded image
+		 * @throws RuntimeException if the image cannot be decoded
+		 */
+		public synchronized BufferedImage getImage() {
+			if (image == null) {
+				image = decode(name, data);
+				data = null;
+			}
+			return image;
+		}
+	}
+}
@@ -1,16 +1,18 @@
 package com.aific.fullscreencounter;
 
-//import java.awt.AlphaComposite;
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.MediaTracker;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
-
-import javax.swing.ImageIcon;
-import javax.swing.JComponent;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 
 /**
@@ -20,6 +22,29 @@ import javax.swing.JComponent;
  */
 public class StarIndicator implements BackgroundIndicator {
 	
+	/// The smallest star radius to which the stars can shrink to fit the goal
+	private static final int MIN_STAR_RADIUS = 2;
+	
+	/// The star images
+	private static final String STAR_IMAGE = "Star - Normal.png";
+	private static final String SHINING_STAR_IMAGE = "Star - Shining.png";
+	
+	/// The maximum number of dirty regions before it is cheaper to repaint
+	/// everything
+	private static final int MAX_DIRTY_REGIONS = 256;
+	
+	/// The maximum number of stars that twinkle at the same time
+	private static final int MAX_TWINKLES = 24;
+	
+	/// The duration of a twinkle in animation steps, which are 1/30 s long
+	private static final int TWINKLE_STEPS = 23;
+	
+	/// The probability that a new twinkle starts in an animation step
+	private static final double TWINKLE_PROBABILITY = 0.5;
+	
+	/// The maximum opacity of the sprite drawn over a twinkling star
+	private static final float TWINKLE_ALPHA = 0.8f;
+	
 	private Dimension size;
 	private Color background;
 	
@@ -27,70 +52,180 @@ public class StarIndicator implements BackgroundIndicator {
 	private int minValue;
 	private int maxValue;
 	
-	private ArrayList<Star> stars;
+	/// The stars, stored as parallel arrays of coordinates and variations
+	private int[] starX;
+	private int[] starY;
+	private int[] starVariation;
+	private int starCount;
+	
+	private PoissonDiskLayout starLayout;
+	private Random random;
+	
+	/// The dirty regions; the rectangles are reused, so only the first
+	/// dirtyCount of them are valid
+	private ArrayList<Rectangle> dirtyRegions;
+	private int dirtyCount;
+	private boolean dirtyAll;
+	private Rectangle fullRegion;
+	
+	/// The offscreen layer with the background and all visible stars
+	private VolatileImage layer;
+	private int layerStars;
+	private boolean layerShining;
+	private Color layerBackground;
 	
 	private int starMinRadius;
 	private int starMaxRadius;
 	private int starVariations;
 	private double starMinDist;
 	
-	private ImageIcon starIcon;
-	private ImageIcon starShiningIcon;
+	/// The variations of the stars up to the goal, chosen in advance so that
+	/// their sprites can be prepared by the constructor
+	private int[] plannedVariations;
+	
+	/// The variations with prepared sprites, which are reused by the stars
+	/// beyond the goal
+	private int[] preparedVariations;
+	
+	/// The atlas with the star sprites, and the slots of each variation (or
+	/// -1 for the variations that are not used)
+	private SpriteAtlas starAtlas;
+	private int[] starSlots;
+	private int[] starShiningSlots;
 	
-	private Image[] starScaledImages;
-	private Image[] starShiningScaledImages;
-	private MediaTracker imageMediaTracker;
+	/// The twinkling stars and the number of steps since each of them
+	/// started to twinkle; only the first twinkleCount are valid
+	private int[] twinkleStar;
+	private int[] twinkleAge;
+	private int twinkleCount;
 	
 	
 	/**
 	 * Create an instance of class StarIndicator
 	 * 
-	 * @param component the component
 	 * @param minValue the minimum value
 	 * @param maxValue the maximum value
 	 * @param size the size
 	 */
-	public StarIndicator(JComponent component, int minValue, int maxValue, Dimension size) {
+	public StarIndicator(int minValue, int maxValue, Dimension size) {
 		
-		this.stars = new ArrayList<StarIndicator.Star>();
+		this.starX = new int[16];
+		this.starY = new int[16];
+		this.starVariation = new int[16];
+		this.starCount = 0;
 		
 		this.minValue = minValue;
 		this.maxValue = maxValue;
 		this.size = size;
 		this.background = Color.BLACK;
+		this.random = new Random();
+		this.dirtyRegions = new ArrayList<Rectangle>();
+		this.dirtyCount = 0;
+		this.dirtyAll = true;
+		this.fullRegion = new Rectangle(0, 0, size.width, size.height);
+		this.twinkleStar = new int[MAX_TWINKLES];
+		this.twinkleAge = new int[MAX_TWINKLES];
+		this.twinkleCount = 0;
 		
-		starMinRadius  = size.height / 60;
-		starMaxRadius  = size.height / 25;
-		starVariations = starMaxRadius - starMinRadius + 1;
-		starMinDist    = starMaxRadius * 2.5;
 		
-		starIcon = new ImageIcon(StarIndicator.class.getResource("Star - Normal.png"));
-		starShiningIcon = new ImageIcon(StarIndicator.class.getResource("Star - Shining.png"));
+		// Lay out the stars, shrinking them if the goal does not fit
 		
-		starScaledImages = new Image[starVariations];
-		starShiningScaledImages = new Image[starVariations];
+		starMinRadius = size.height / 60;
+		starMaxRadius = size.height / 25;
+		createLayout();
 		
-		imageMediaTracker = new MediaTracker(component);
-
-		for (int i = 0; i < starScaledImages.length; i++) {
-			int r = starMinRadius + i;
+		while (starLayout.getCapacity() < maxValue && starMaxRadius > MIN_STAR_RADIUS) {
 			
-			starScaledImages[i] = starIcon.getImage()
-					.getScaledInstance(2 * r, 2 * r, Image.SCALE_SMOOTH);
-			starShiningScaledImages[i] = starShiningIcon.getImage()
-					.getScaledInstance(2 * r, 2 * r, Image.SCALE_SMOOTH);
+			// The capacity is roughly inversely proportional to the square
+			// of the minimum distance between the stars
 			
-			imageMediaTracker.addImage(starScaledImages[i], 0);
-			imageMediaTracker.addImage(starShiningScaledImages[i], 0);
+			double f = Math.min(0.95, Math.sqrt(starLayout.getCapacity() / (double) maxValue));
+			starMaxRadius = Math.max(MIN_STAR_RADIUS, (int) (starMaxRadius * f));
+			starMinRadius = Math.max(1, Math.min(starMaxRadius, (int) (starMinRadius * f)));
+			createLayout();
 		}
-
-		try {
-			imageMediaTracker.waitForAll();
+		
+		starVariations = starMaxRadius - starMinRadius + 1;
+		
+		
+		// Choose the variations of the stars up to the goal (or the initial
+		// value, if higher), so that only the sprites that can be shown by
+		// then are scaled
+		
+		plannedVariations = new int[Math.min(starLayout.getCapacity(),
+				Math.max(1, Math.max(minValue, maxValue)))];
+		for (int i = 0; i < plannedVariations.length; i++) {
+			plannedVariations[i] = random.nextInt(starVariations);
 		}
-		catch(InterruptedException e) {}
-
+		
+		prepareSprites();
+		
 		setValue(this.minValue);
 	}
+	
+	
+	/**
+	 * Scale the plain and the shining sprites of the planned variations, and
+	 * add them to the atlas. This is done by the constructor, which runs on
+	 * the thread that prepares the indicators, so that the stars never need
+	 * to be scaled while updating the value or painting.
+	 */
+	private void prepareSprites() {
+		
+		starSlots = new int[starVariations];
+		starShiningSlots = new int[starVariations];
+		Arrays.fill(starSlots, -1);
+		Arrays.fill(starShiningSlots, -1);
+		
+		boolean[] used = new boolean[starVariations];
+		int count = 0;
+		for (int i = 0; i < plannedVariations.length; i++) {
+			if (!used[plannedVariations[i]]) count++;
+			used[plannedVariations[i]] = true;
+		}
+		
+		preparedVariations = new int[count];
+		String[] names = new String[2 * count];
+		int[] sizes = new int[2 * count];
+		
+		for (int v = 0, n = 0; v < starVariations; v++) {
+			if (!used[v]) continue;
+			preparedVariations[n] = v;
+			names[2 * n    ] = STAR_IMAGE;
+			names[2 * n + 1] = SHINING_STAR_IMAGE;
+			sizes[2 * n    ] = 2 * (starMinRadius + v);
+			sizes[2 * n + 1] = 2 * (starMinRadius + v);
+			n++;
+		}
+		
+		BufferedImage[] images = Sprites.loadScaled(names, sizes, sizes);
+		
+		starAtlas = new SpriteAtlas(SpriteAtlas.suggestWidth(sizes, sizes), 2 * starMaxRadius);
+		for (int n = 0; n < count; n++) {
+			starSlots[preparedVariations[n]] = starAtlas.add(images[2 * n]);
+			starShiningSlots[preparedVariations[n]] = starAtlas.add(images[2 * n + 1]);
+		}
+	}
+	
+	
+	/**
+	 * Create the star layout for the current star radius range
+	 */
+	private void createLayout() {
+		starMinDist = starMaxRadius * 2.5;
+		starLayout  = new PoissonDiskLayout(size.width  - 2 * starMaxRadius,
+				size.height - 2 * starMaxRadius, starMinDist, random);
+	}
+	
+	
+	/**
+	 * Get the maximum number of stars that fit on the screen
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return starLayout.getCapacity();
+	}
 
 
 	/**
@@ -100,24 +235,113 @@ public class StarIndicator implements BackgroundIndicator {
 	 */
 	@Override
 	public void setValue(int value) {
+		
+		int oldValue = this.value;
+		int oldVisible = Math.min(starCount, oldValue);
 		this.value = value;
 		
-		if (stars.size() < value) {
-			for (int i = stars.size(); i < value; i++) {
-				
-				int x, y;
-				int tries = 0;
+		int n = Math.min(value, starLayout.getCapacity());
+		for (int i = starCount; i < n; i++) {
+			addStar(starLayout.getX(i), starLayout.getY(i), i < plannedVariations.length
+					? plannedVariations[i]
+					: preparedVariations[random.nextInt(preparedVariations.length)]);
+		}
+		
+		
+		// Mark the added or removed stars as dirty, or everything if all
+		// stars switched to shining or back
+		
+		if ((oldValue >= maxValue) != (value >= maxValue)) {
+			dirtyAll = true;
+		}
+		
+		int newVisible = Math.min(starCount, value);
+		for (int i = Math.min(oldVisible, newVisible); i < Math.max(oldVisible, newVisible) && !dirtyAll; i++) {
+			addDirtyStar(i);
+		}
+	}
+	
+	
+	/**
+	 * Mark the bounding box of a star as dirty
+	 * 
+	 * @param index the star index
+	 */
+	private void addDirtyStar(int index) {
+		
+		if (dirtyAll) return;
+		
+		if (dirtyCount >= MAX_DIRTY_REGIONS) {
+			dirtyAll = true;
+			dirtyCount = 0;
+			return;
+		}
+		
+		if (dirtyCount == dirtyRegions.size()) dirtyRegions.add(new Rectangle());
+		getStarBounds(index, dirtyRegions.get(dirtyCount++));
+	}
+	
+	
+	/**
+	 * Advance the twinkling of the stars. Each step ends the finished
+	 * twinkles, and possibly starts a new one on a random visible star,
+	 * while fewer than the given fraction of the maximum number of stars
+	 * are twinkling. Only the twinkling stars are marked as dirty.
+	 * 
+	 * @param steps the number of fixed time steps to advance by
+	 * @param density the fraction of the elements to animate, between 0 and 1
+	 * @return true if there are any visible stars to twinkle
+	 */
+	@Override
+	public boolean animate(int steps, double density) {
+		
+		int visible = Math.min(starCount, value);
+		int limit = (int) Math.round(density * MAX_TWINKLES);
+		
+		for (int s = 0; s < steps; s++) {
+			
+			// End the finished twinkles, and the twinkles of the stars that
+			// are no longer visible
+			
+			for (int i = 0; i < twinkleCount; ) {
+				if (++twinkleAge[i] >= TWINKLE_STEPS || twinkleStar[i] >= visible) {
+					if (twinkleStar[i] < visible) addDirtyStar(twinkleStar[i]);
+					twinkleCount--;
+					twinkleStar[i] = twinkleStar[twinkleCount];
+					twinkleAge[i] = twinkleAge[twinkleCount];
+				}
+				else {
+					i++;
+				}
+			}
+			
+			
+			// Start a new twinkle
+			
+			if (visible > 0 && twinkleCount < limit
+					&& random.nextDouble() < TWINKLE_PROBABILITY) {
 				
-				do {
-					x = (int) (Math.random() * (size.width  - 2 * starMaxRadius));
-					y = (int) (Math.random() * (size.height - 2 * starMaxRadius));
-					if (tries++ > 500) return;	// Too many stars!
+				int star = random.nextInt(visible);
+				boolean twinkling = false;
+				for (int i = 0; i < twinkleCount; i++) {
+					if (twinkleStar[i] == star) twinkling = true;
 				}
-				while (!isFarEnough(x, y));
 				
-				stars.add(new Star(x, y, (int) (Math.random() * starVariations)));
+				if (!twinkling) {
+					twinkleStar[twinkleCount] = star;
+					twinkleAge[twinkleCount] = 0;
+					twinkleCount++;
+				}
 			}
 		}
+		
+		if (steps > 0) {
+			for (int i = 0; i < twinkleCount; i++) {
+				addDirtyStar(twinkleStar[i]);
+			}
+		}
+		
+		return visible > 0;
 	}
 	
 	
@@ -128,8 +352,33 @@ public class StarIndicator implements BackgroundIndicator {
 	 */
 	@Override
 	public void setBackground(Color color) {
+		if (!color.equals(background)) dirtyAll = true;
 		this.background = color;
 	}
+	
+	
+	/**
+	 * Collect the regions that changed since the last call, and then forget
+	 * them. The rectangles are reused, so they are valid only until the next
+	 * call to setValue() or animate().
+	 * 
+	 * @param regions the list to which to add the changed regions
+	 */
+	@Override
+	public void collectDirtyRegions(List<Rectangle> regions) {
+		
+		if (dirtyAll) {
+			regions.add(fullRegion);
+		}
+		else {
+			for (int i = 0; i < dirtyCount; i++) {
+				regions.add(dirtyRegions.get(i));
+			}
+		}
+		
+		dirtyCount = 0;
+		dirtyAll = false;
+	}
 
 	
 	/**
@@ -142,23 +391,62 @@ public class StarIndicator implements BackgroundIndicator {
 		
 		Composite defaultComposite = g.getComposite();
 		
-		g.setClip(0, 0, size.width, size.height);
+		g.clipRect(0, 0, size.width, size.height);
 		
-		g.setColor(background);
-		g.fillRect(0, 0, size.width, size.height);
 		
+		// Bring the star layer up to date and blit it, repeating if its
+		// contents were lost in the meantime
 		
-		// Wait for the images
+		GraphicsConfiguration gc = g.getDeviceConfiguration();
 		
-		while (!imageMediaTracker.checkAll()) {
-			Thread.yield();
+		do {
+			boolean rebuild = false;
+			
+			if (layer == null) {
+				layer = gc.createCompatibleVolatileImage(size.width, size.height);
+				rebuild = true;
+			}
+			else {
+				switch (layer.validate(gc)) {
+				case VolatileImage.IMAGE_INCOMPATIBLE:
+					layer.flush();
+					layer = gc.createCompatibleVolatileImage(size.width, size.height);
+					rebuild = true;
+					break;
+				case VolatileImage.IMAGE_RESTORED:
+					rebuild = true;
+					break;
+				default:
+					break;
+				}
+			}
+			
+			updateLayer(rebuild);
+			g.drawImage(layer, 0, 0, null);
 		}
-
+		while (layer.contentsLost());
 		
-		// Paint the stars
 		
-		for (int i = 0; i < Math.min(stars.size(), value); i++) {
-			stars.get(i).paint(g);
+		// Draw the twinkling stars over the layer, brightening them by
+		// drawing their sprites again
+		
+		if (twinkleCount > 0) {
+			
+			float alpha = 1;
+			if (defaultComposite instanceof AlphaComposite) {
+				alpha = ((AlphaComposite) defaultComposite).getAlpha();
+			}
+			
+			int visible = Math.min(starCount, value);
+			for (int i = 0; i < twinkleCount; i++) {
+				if (twinkleStar[i] >= visible) continue;
+				
+				float a = TWINKLE_ALPHA * (float) Math.sin(Math.PI * twinkleAge[i] / TWINKLE_STEPS);
+				if (a <= 0) continue;
+				
+				g.setComposite(AlphaComposite.SrcOver.derive(alpha * a));
+				paintStar(g, twinkleStar[i]);
+			}
 		}
 		
 		
@@ -169,67 +457,90 @@ public class StarIndicator implements BackgroundIndicator {
 	
 	
 	/**
-	 * Determine if the given coordinates are a minimum distance away from all
-	 * of the already placed stars.
+	 * Bring the star layer up to date, drawing only the newly added stars
+	 * unless the layer has to be rebuilt from scratch
+	 * 
+	 * @param rebuild true to force redrawing the entire layer
+	 */
+	private void updateLayer(boolean rebuild) {
+		
+		int visible = Math.min(starCount, value);
+		boolean shining = value >= maxValue;
+		
+		if (visible < layerStars || shining != layerShining
+				|| !background.equals(layerBackground)) {
+			rebuild = true;
+		}
+		
+		if (!rebuild && visible == layerStars) return;
+		
+		Graphics2D lg = layer.createGraphics();
+		
+		if (rebuild) {
+			lg.setColor(background);
+			lg.fillRect(0, 0, size.width, size.height);
+			layerStars = 0;
+			layerShining = shining;
+			layerBackground = background;
+		}
+		
+		for (int i = layerStars; i < visible; i++) {
+			paintStar(lg, i);
+		}
+		
+		layerStars = visible;
+		lg.dispose();
+	}
+	
+	
+	/**
+	 * Add a star
 	 * 
 	 * @param x the X coordinate
 	 * @param y the Y coordinate
-	 * @return true if it is far enough
+	 * @param variation the variation
 	 */
-	private boolean isFarEnough(int x, int y) {
+	private void addStar(int x, int y, int variation) {
 		
-		for (Star s : stars) {
-			double d = Math.sqrt((x - s.x) * (x - s.x) + (y - s.y) * (y - s.y));
-			if (d < starMinDist) return false;
+		if (starCount == starX.length) {
+			starX = Arrays.copyOf(starX, 2 * starCount);
+			starY = Arrays.copyOf(starY, 2 * starCount);
+			starVariation = Arrays.copyOf(starVariation, 2 * starCount);
 		}
 		
-		return true;
+		starX[starCount] = x;
+		starY[starCount] = y;
+		starVariation[starCount] = variation;
+		starCount++;
 	}
-
+	
 	
 	/**
-	 * A star
+	 * Get the bounding box of a star
+	 * 
+	 * @param index the star index
+	 * @param r the rectangle to set to the bounding box
+	 */
+	private void getStarBounds(int index, Rectangle r) {
+		int d = 2 * (starMinRadius + starVariation[index]);
+		r.setBounds(starX[index], starY[index], d, d);
+	}
+	
+	
+	/**
+	 * Paint a star
+	 * 
+	 * @param g the graphics object
+	 * @param index the star index
 	 */
-	protected class Star {
+	private void paintStar(Graphics2D g, int index) {
 		
-		public static final int RADIUS = 5;
-		public static final int MIN_DISTANCE = 25;
-
-		public int x;
-		public int y;
-		public int variation;
-		
-		
-		/**
-		 * Create an instance of class Star
-		 * 
-		 * @param x the X coordinate
-		 * @param y the Y coordinate
-		 * @param variation the variation
-		 */
-		public Star(int x, int y, int variation) {
-			this.x = x;
-			this.y = y;
-			this.variation = variation;
-		}
-
+		int slot = value >= maxValue
+				? starShiningSlots[starVariation[index]]
+				: starSlots[starVariation[index]];
 		
-		/**
-		 * Paint
-		 * 
-		 * @param g the graphics object
-		 */
-		public void paint(Graphics2D g) {
-			
-			Image image = starScaledImages[variation];
-			
-			if (value >= maxValue) {
-				image = starShiningScaledImages[variation];
-			}
-			
-			//g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+		//g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
 
-			g.drawImage(image, x, y, null);
-		}
+		starAtlas.draw(g, slot, starX[index], starY[index]);
 	}
 }
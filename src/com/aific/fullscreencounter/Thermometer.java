@@ -33,8 +33,7 @@
 package com.aific.fullscreencounter;
 
 import java.awt.*;
-
-import javax.swing.*;
+import java.awt.image.BufferedImage;
 
 
 /**
@@ -49,15 +48,14 @@ public class Thermometer extends GraphicalIndicator {
 	private static final int Y_GOAL  = 140;
 	private static final int Y_EMPTY = 790;
 	
-	private ImageIcon emptyIcon;
-	private ImageIcon reachedIcon;
+	private int iconHeight;
 	private double iconAspectRatio;
 	
-	private Image emptyScaledImage;
-	private Image reachedScaledImage;
-	private MediaTracker imageMediaTracker;
+	private BufferedImage emptyScaledImage;
+	private BufferedImage reachedScaledImage;
 	
 	private Dimension desiredSize;
+	private Rectangle imageBounds;
 	
 	private int value;
 	private int minValue;
@@ -65,15 +63,55 @@ public class Thermometer extends GraphicalIndicator {
 	
 	
 	/**
-	 * Create an instance of class Thermometer
+	 * The scaled images of a thermometer, which can be loaded on any thread
+	 */
+	public static class Images {
+	
+		private Dimension iconSize;
+		private BufferedImage emptyScaledImage;
+		private BufferedImage reachedScaledImage;
+		
+		
+		/**
+		 * Create an instance of class Images
+		 * 
+		 * @param iconSize the size of the image resources
+		 * @param emptyScaledImage the scaled empty thermometer
+		 * @param reachedScaledImage the scaled full thermometer
+		 */
+		private Images(Dimension iconSize, BufferedImage emptyScaledImage,
+				BufferedImage reachedScaledImage) {
+			this.iconSize = iconSize;
+			this.emptyScaledImage = emptyScaledImage;
+			this.reachedScaledImage = reachedScaledImage;
+		}
+	}
+	
+	
+	/**
+	 * Create an instance of class Thermometer, loading its images on the
+	 * calling thread
 	 * 
 	 * @param minValue the minimum value
 	 * @param maxValue the maximum value
 	 * @param height the desired height
 	 */
 	public Thermometer(int minValue, int maxValue, int height) {
-		
+		this(minValue, maxValue, loadImages(height));
+	}
+	
+	
+	/**
+	 * Create an instance of class Thermometer
+	 * 
+	 * @param minValue the minimum value
+	 * @param maxValue the maximum value
+	 * @param images the images from {@link #loadImages(int)}
+	 */
+	public Thermometer(int minValue, int maxValue, Images images) {
+	
 		this.value    = minValue;
+		this.imageBounds = new Rectangle();
 		this.minValue = minValue;
 		this.maxValue = maxValue;
 		
@@ -81,35 +119,15 @@ public class Thermometer extends GraphicalIndicator {
 			throw new IllegalArgumentException("minValue >= maxValue");
 		}
 		
+		iconHeight = images.iconSize.height;
+		iconAspectRatio = images.iconSize.width / (double) images.iconSize.height;
 		
-		// Load the resources
-		
-		emptyIcon = new ImageIcon(Thermometer.class.getResource("Goal Thermometer - Empty.png"));
-		reachedIcon = new ImageIcon(Thermometer.class.getResource("Goal Thermometer - Goal.png"));
-		iconAspectRatio = emptyIcon.getIconWidth()  / (double) emptyIcon.getIconHeight();
-
-		
-		// Compute the dimensions
-		
-		int scaledWidth = (int) (emptyIcon.getIconWidth() * (height / (double) emptyIcon.getIconHeight()));
-		desiredSize = new Dimension(scaledWidth, height);
-		
+		emptyScaledImage   = images.emptyScaledImage;
+		reachedScaledImage = images.reachedScaledImage;
 		
-		// Scale the resource images
+		desiredSize = new Dimension(emptyScaledImage.getWidth(), emptyScaledImage.getHeight());
 		
-		emptyScaledImage   = emptyIcon  .getImage().getScaledInstance(desiredSize.width, desiredSize.height, Image.SCALE_SMOOTH);
-		reachedScaledImage = reachedIcon.getImage().getScaledInstance(desiredSize.width, desiredSize.height, Image.SCALE_SMOOTH);
 		
-		imageMediaTracker = new MediaTracker(this);
-		imageMediaTracker.addImage(emptyScaledImage, 0);
-		imageMediaTracker.addImage(reachedScaledImage, 0);
-
-		try {
-			imageMediaTracker.waitForAll();
-		}
-		catch(InterruptedException e) {}
-		
-
 		// Set the component size
 		
 		setMinimumSize  (desiredSize);
@@ -119,43 +137,87 @@ public class Thermometer extends GraphicalIndicator {
 	
 	
 	/**
-	 * Set the value
+	 * Load and scale the images of a thermometer with the given height. This
+	 * does not create any Swing component, so it can run on any thread.
 	 * 
-	 * @param value the new value
+	 * @param height the desired height
+	 * @return the images
+	 * @throws RuntimeException if the images cannot be loaded
 	 */
-	@Override
-	public void setValue(int value) {
-		this.value = value;
-		invalidate();
+	public static Images loadImages(int height) {
+	
+		Dimension iconSize = Sprites.getSize("Goal Thermometer - Empty.png");
+		Dimension size = getScaledSize(iconSize, height);
+		
+		BufferedImage[] scaled = Sprites.loadScaled(
+				new String[] { "Goal Thermometer - Empty.png", "Goal Thermometer - Goal.png" },
+				new int[] { size.width , size.width  },
+				new int[] { size.height, size.height });
+		
+		return new Images(iconSize, scaled[0], scaled[1]);
 	}
 
+
+	/**
+	 * Get the size of a thermometer with the given height, which reads only
+	 * the header of the image resource
+	 * 
+	 * @param height the desired height
+	 * @return the size of the component
+	 */
+	public static Dimension getScaledSize(int height) {
+		return getScaledSize(Sprites.getSize("Goal Thermometer - Empty.png"), height);
+	}
+	
 	
 	/**
-	 * Paint the component
+	 * Get the size of a thermometer with the given height
 	 * 
-	 * @param g the graphics context
+	 * @param iconSize the size of the image resource
+	 * @param height the desired height
+	 * @return the size of the component
+	 */
+	private static Dimension getScaledSize(Dimension iconSize, int height) {
+		int scaledWidth = (int) (iconSize.width * (height / (double) iconSize.height));
+		return new Dimension(scaledWidth, height);
+	}
+	
+	
+	/**
+	 * Set the value
+	 * 
+	 * @param value the new value
 	 */
 	@Override
-	protected void paintComponent(Graphics g) {
+	public void setValue(int value) {
 		
-		int width = getWidth();
-		int height = getHeight();
+		int oldValue = this.value;
+		this.value = value;
 		
-		if (isOpaque()) {
-			g.setClip(0, 0, width, height);
-			g.setColor(getBackground());
-			g.fillRect(0, 0, width, height);
-		}
 		
+		// Repaint only the band between the old and the new level
 		
-		// Wait for the images
+		Rectangle r = getImageBounds(getWidth(), getHeight());
+		int oldSplit = getSplit(oldValue, r.height);
+		int newSplit = getSplit(value, r.height);
 		
-		while (!imageMediaTracker.checkAll()) {
-			Thread.yield();
+		if (oldSplit != newSplit) {
+			int top = Math.min(oldSplit, newSplit);
+			int bottom = Math.max(oldSplit, newSplit);
+			repaint(r.x, r.y + top, r.width, bottom - top);
 		}
-		
-
-		// Compute the destination size and location
+	}
+	
+	
+	/**
+	 * Compute the location and the size of the thermometer image within the
+	 * given area
+	 * 
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @return the destination rectangle, which is reused between calls
+	 */
+	private Rectangle getImageBounds(int width, int height) {
 		
 		int dw = desiredSize.width;
 		int dh = desiredSize.height;
@@ -170,36 +232,89 @@ public class Thermometer extends GraphicalIndicator {
 		
 		int dx = (width  - dw) / 2;
 		int dy = (height - dh) / 2;
-
 		
-		// Compute the split between the two images
+		imageBounds.setBounds(dx, dy, dw, dh);
+		return imageBounds;
+	}
+	
+	
+	/**
+	 * Compute the split between the empty and the reached image, relative to
+	 * the top of the destination rectangle
+	 * 
+	 * @param value the value
+	 * @param dh the height of the destination rectangle
+	 * @return the Y coordinate of the split
+	 */
+	private int getSplit(int value, int dh) {
 		
 		double p = (value - minValue) / (double) (maxValue - minValue);
 		if (p < 0) p = 0;
 		
-		int d_goal  = (int) (dh * (Y_GOAL  / (double) emptyIcon.getIconHeight()));
-		int d_empty = (int) (dh * (Y_EMPTY / (double) emptyIcon.getIconHeight()));
+		int d_goal  = (int) (dh * (Y_GOAL  / (double) iconHeight));
+		int d_empty = (int) (dh * (Y_EMPTY / (double) iconHeight));
 		int d_scale = d_empty - d_goal;
 		
 		int d_split = (int) Math.round(d_empty - (p * d_scale));
 		if (d_split < 0) d_split = 0;
 		
-		int s_split = (int) Math.round((Y_EMPTY - (p * (Y_EMPTY - Y_GOAL))) * (desiredSize.height / (double) emptyIcon.getIconHeight()));
-		if (s_split < 0) s_split = 0;
+		return d_split;
+	}
+
+	
+	/**
+	 * Paint the component
+	 * 
+	 * @param g the graphics context
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		paintIndicator((Graphics2D) g, getWidth(), getHeight());
+	}
+	
+	
+	/**
+	 * Paint the indicator into the given area
+	 * 
+	 * @param g the graphics context
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 */
+	@Override
+	public void paintIndicator(Graphics2D g, int width, int height) {
+		
+		if (isOpaque()) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, width, height);
+		}
+		
+		
+		// Compute the destination size and location, and the split between
+		// the two images
 		
+		Rectangle r = getImageBounds(width, height);
+		int dx = r.x;
+		int dy = r.y;
+		int dw = r.width;
+		int dh = r.height;
 		
-		// Draw the images
+		int d_split = getSplit(value, dh);
+		
+		
+		// Draw the images, staying within the clip of the repaint request
 
+		Shape clip = g.getClip();
+		
 		if (d_split >= 1) {
-			g.setClip(dx, dy, dw, d_split);
+			g.clipRect(dx, dy, dw, d_split);
 			g.drawImage(emptyScaledImage, dx, dy, dx + dw, dy + dh, 0, 0, desiredSize.width, desiredSize.height, null);
-			//g.drawImage(emptyScaledImage, dx, dy, dx + dw, dy + d_split, 0, 0, desiredSize.width, s_split, null);
+			g.setClip(clip);
 		}
 		
 		if (d_split < dh) {
-			g.setClip(dx, dy + d_split, dw, dh - d_split);
+			g.clipRect(dx, dy + d_split, dw, dh - d_split);
 			g.drawImage(reachedScaledImage, dx, dy, dx + dw, dy + dh, 0, 0, desiredSize.width, desiredSize.height, null);
-			//g.drawImage(reachedScaledImage, dx, dy + d_split, dx + dw, dy + dh, 0, s_split, desiredSize.width, desiredSize.height, null);
+			g.setClip(clip);
 		}
 	}
 	
@@ -0,0 +1,147 @@
+package com.aific.fullscreencounter;
+
+
+/**
+ * A fixed-size histogram of durations with microsecond resolution. The
+ * buckets are log-linear: values below 32 microseconds get a bucket each,
+ * and every larger power of two is split into 32 equal buckets, which
+ * bounds the relative error of the reported percentiles by about 3%.
+ * Durations longer than about 19 hours fall into the last bucket.
+ *
+ * <p>Recording a value does not allocate any memory, so it can be used on
+ * the rendering hot path. All methods are synchronized, so that the values
+ * can be recorded and read by different threads.</p>
+ *
+ * @author Peter Macko
+ */
+public class TimeHistogram {
+
+	/// The number of bits used to select a bucket within a power of two
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/// The largest power of two with its own buckets
+	private static final int MAX_EXPONENT = 36;
+
+	/// The number of buckets
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private long[] counts;
+	private long total;
+	private long max;
+
+
+	/**
+	 * Create an instance of class TimeHistogram
+	 */
+	public TimeHistogram() {
+		counts = new long[BUCKETS];
+		total = 0;
+		max = 0;
+	}
+
+
+	/**
+	 * Get the bucket for a value
+	 *
+	 * @param micros the value in microseconds
+	 * @return the bucket index
+	 */
+	private static int bucketOf(long micros) {
+
+		if (micros < SUB_BUCKETS) return (int) Math.max(0, micros);
+
+		int e = 63 - Long.numberOfLeadingZeros(micros);
+		if (e > MAX_EXPONENT) return BUCKETS - 1;
+
+		int sub = (int) (micros >>> (e - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (e - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+	}
+
+
+	/**
+	 * Get the largest value that falls into a bucket
+	 *
+	 * @param bucket the bucket index
+	 * @return the value in microseconds
+	 */
+	private static long upperBoundOf(int bucket) {
+
+		if (bucket < SUB_BUCKETS) return bucket;
+
+		int e = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		int shift = e - SUB_BUCKET_BITS;
+
+		return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+	}
+
+
+	/**
+	 * Record a duration
+	 *
+	 * @param nanos the duration in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+
+		long micros = nanos / 1000;
+
+		counts[bucketOf(micros)]++;
+		total++;
+		if (micros > max) max = micros;
+	}
+
+
+	/**
+	 * Forget all recorded values
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < counts.length; i++) counts[i] = 0;
+		total = 0;
+		max = 0;
+	}
+
+
+	/**
+	 * Get the number of recorded values
+	 *
+	 * @return the number of values
+	 */
+	public synchronized long getCount() {
+		return total;
+	}
+
+
+	/**
+	 * Get the largest recorded value
+	 *
+	 * @return the value in microseconds
+	 */
+	public synchronized long getMax() {
+		return max;
+	}
+
+
+	/**
+	 * Get a percentile of the recorded values
+	 *
+	 * @param percentile the percentile between 0 and 100
+	 * @return the value in microseconds (an upper bound of its bucket, but
+	 *         never more than the maximum), or 0 if there are no values
+	 */
+	public synchronized long getPercentile(double percentile) {
+
+		if (total == 0) return 0;
+
+		long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+		if (rank < 1) rank = 1;
+
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return Math.min(upperBoundOf(i), max);
+		}
+
+		return max;
+	}
+}
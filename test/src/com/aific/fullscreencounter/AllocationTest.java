@@ -0,0 +1,217 @@
+package com.aific.fullscreencounter;
+
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import javax.swing.JPanel;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Checks that the steady-state counter updates do not allocate, using the
+ * per-thread allocation counters of the JVM. The components are sized but
+ * never shown, so their repaint requests return before reaching the Swing
+ * repaint manager.
+ *
+ * <p>This covers the parts of CounterFrame.setCounter() that run on every
+ * increment: the journal, the indicators, the label and the walk over the
+ * dirty regions. It does not cover setCounter() itself, which needs a
+ * displayable frame, nor the repaint manager and the painting of the frame
+ * by Swing, nor the palette switch when crossing the goal, which is not a
+ * steady-state update.</p>
+ *
+ * @author Peter Macko
+ */
+public class AllocationTest {
+
+	/// The number of updates to warm up the JIT before measuring
+	private static final int WARM_UP = 50000;
+
+	/// The number of measured updates
+	private static final int UPDATES = 20000;
+
+	/// The allowed number of bytes for the whole measured loop, which covers
+	/// the noise of the measurement but not even one byte per update
+	private static final long TOLERANCE = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	/**
+	 * An update to measure
+	 */
+	private interface Update {
+
+		/**
+		 * Run the update
+		 *
+		 * @param i the iteration
+		 */
+		public void run(int i);
+	}
+
+
+	/**
+	 * Measure the bytes allocated by the updates after a warm-up, and check
+	 * that there are none
+	 *
+	 * @param name the name of the update
+	 * @param update the update
+	 */
+	private static void assertNoAllocations(String name, Update update) {
+
+		com.sun.management.ThreadMXBean bean;
+		try {
+			bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		}
+		catch (ClassCastException e) {
+			bean = null;
+		}
+		Assume.assumeTrue(bean != null && bean.isThreadAllocatedMemorySupported());
+		bean.setThreadAllocatedMemoryEnabled(true);
+
+		long thread = Thread.currentThread().getId();
+
+		for (int i = 0; i < WARM_UP; i++) update.run(i);
+
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = WARM_UP; i < WARM_UP + UPDATES; i++) update.run(i);
+		long allocated = bean.getThreadAllocatedBytes(thread) - before;
+
+		assertTrue(name + " allocated " + allocated + " bytes in " + UPDATES + " updates",
+				allocated <= TOLERANCE);
+	}
+
+
+	/**
+	 * Formatting the value in the counter label and painting it with the
+	 * glyphs fitted to the width of the label
+	 */
+	@Test
+	public void testCounterLabel() {
+
+		final CounterLabel label = new CounterLabel(new Font(Font.SANS_SERIF, Font.PLAIN, 200));
+		label.setForeground(Color.WHITE);
+		label.setSize(640, 360);
+
+		BufferedImage image = new BufferedImage(640, 360, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+
+		try {
+			assertNoAllocations("CounterLabel.setValue", new Update() {
+				@Override
+				public void run(int i) {
+					label.setValue(i);
+					label.paintText(g, 0, 0, label.getWidth(), label.getHeight());
+				}
+			});
+		}
+		finally {
+			g.dispose();
+		}
+	}
+
+
+	/**
+	 * Adding a star, collecting the dirty regions and requesting their
+	 * repaint, once all stars are placed and the dirty list reached its size
+	 */
+	@Test
+	public void testStarIndicator() {
+
+		final StarIndicator stars = new StarIndicator(0, 100, new Dimension(640, 360));
+		final ArrayList<Rectangle> regions = new ArrayList<Rectangle>(16);
+		final int capacity = stars.getCapacity();
+
+		final JPanel panel = new JPanel();
+		panel.setSize(640, 360);
+
+		assertNoAllocations("StarIndicator.setValue", new Update() {
+			@Override
+			public void run(int i) {
+				stars.setValue(i % capacity);
+				regions.clear();
+				stars.collectDirtyRegions(regions);
+				for (int j = 0; j < regions.size(); j++) {
+					panel.repaint(regions.get(j));
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Moving the thermometer level
+	 */
+	@Test
+	public void testThermometer() {
+
+		final Thermometer thermometer = new Thermometer(0, 1000, 360);
+		thermometer.setSize(Thermometer.getScaledSize(360));
+
+		assertNoAllocations("Thermometer.setValue", new Update() {
+			@Override
+			public void run(int i) {
+				thermometer.setValue(i % 1000);
+			}
+		});
+	}
+
+
+	/**
+	 * Incrementing the counter model and taking snapshots without changes
+	 */
+	@Test
+	public void testCounterModel() {
+
+		final CounterModel model = new CounterModel(0);
+
+		assertNoAllocations("CounterModel.increment", new Update() {
+			@Override
+			public void run(int i) {
+				model.increment();
+				model.get();
+			}
+		});
+	}
+
+
+	/**
+	 * Recording the counter values in the journal
+	 *
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testCounterJournal() throws IOException {
+
+		File path = new File(folder.getRoot(), "journal.dat");
+		final CounterJournal journal = new CounterJournal(path, 60 * 1000);
+
+		try {
+			assertNoAllocations("CounterJournal.record", new Update() {
+				@Override
+				public void run(int i) {
+					journal.record(i, 0, 1000);
+				}
+			});
+		}
+		finally {
+			journal.close();
+		}
+	}
+}
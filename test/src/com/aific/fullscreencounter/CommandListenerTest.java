@@ -0,0 +1,179 @@
+package com.aific.fullscreencounter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Loopback tests of the command listener, checking that the batched
+ * commands give the same result as applying them one by one
+ *
+ * @author Peter Macko
+ */
+public class CommandListenerTest {
+
+	/// The maximum time to wait for the commands to be applied
+	private static final long TIMEOUT = 5000;
+
+	private CounterModel model;
+	private CommandListener listener;
+	private InetAddress loopback;
+
+
+	/**
+	 * Start a listener that applies the commands to a model, the same way
+	 * as the counter window
+	 *
+	 * @throws Exception on failure
+	 */
+	@Before
+	public void setUp() throws Exception {
+
+		model = new CounterModel(0);
+		loopback = InetAddress.getLoopbackAddress();
+
+		listener = new CommandListener(new InetSocketAddress(loopback, 0),
+				new CommandListener.Handler() {
+					@Override
+					public void applyCommands(boolean set, int value, long[] deltas, int count) {
+						model.apply(set, value, deltas, count);
+					}
+				});
+		listener.start();
+	}
+
+
+	/**
+	 * Stop the listener
+	 */
+	@After
+	public void tearDown() {
+		listener.stop();
+	}
+
+
+	/**
+	 * Send commands in a single datagram
+	 *
+	 * @param commands the commands
+	 * @throws Exception on failure
+	 */
+	private void sendDatagram(String commands) throws Exception {
+
+		byte[] data = commands.getBytes("US-ASCII");
+		DatagramSocket socket = new DatagramSocket();
+		try {
+			socket.send(new DatagramPacket(data, data.length, loopback, listener.getLocalPort()));
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+
+	/**
+	 * Send commands over a TCP connection in a single write
+	 *
+	 * @param commands the commands
+	 * @throws Exception on failure
+	 */
+	private void sendStream(String commands) throws Exception {
+
+		Socket socket = new Socket(loopback, listener.getLocalPort());
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(commands.getBytes("US-ASCII"));
+			out.flush();
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+
+	/**
+	 * Wait until the model has the expected value and all pending batches
+	 * were applied, and check the value
+	 *
+	 * @param expected the expected value
+	 * @throws Exception on failure
+	 */
+	private void awaitValue(long expected) throws Exception {
+
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (model.get() != expected && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// Give a wrong late batch a chance to show up
+
+		Thread.sleep(100);
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+
+		assertEquals(expected, model.get());
+	}
+
+
+	/**
+	 * Decrements at zero must not cancel out a later increment
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testMixedSignsOverUdp() throws Exception {
+
+		sendDatagram("-\n-\n+\n");
+		awaitValue(1);
+
+		sendDatagram("+5\n-10\n+3\n+2\n-1\n");
+		awaitValue(4);
+	}
+
+
+	/**
+	 * The same commands over TCP
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testMixedSignsOverTcp() throws Exception {
+
+		sendStream("-\n-\n+\n");
+		awaitValue(1);
+
+		sendStream("+5\n-10\n+3\n+2\n-1\n");
+		awaitValue(4);
+	}
+
+
+	/**
+	 * A set discards the commands before it, but not the ones after it
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testSetInBatch() throws Exception {
+
+		sendDatagram("+100\n=2\n-5\n+1\n");
+		awaitValue(1);
+
+		sendStream("=0\n-\n+\n-\n+\n+\n");
+		awaitValue(2);
+	}
+}
@@ -0,0 +1,210 @@
+package com.aific.fullscreencounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests of the recovery of the counter journal
+ *
+ * @author Peter Macko
+ */
+public class CounterJournalTest {
+
+	/// The force interval, long enough not to force during a test
+	private static final long FORCE_INTERVAL = 60 * 1000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File path;
+
+
+	/**
+	 * Pick the journal file
+	 */
+	@Before
+	public void setUp() {
+		path = new File(folder.getRoot(), "journal.dat");
+	}
+
+
+	/**
+	 * Write the records of the values from 1 to the given count
+	 *
+	 * @param count the number of records
+	 * @param goal the goal value
+	 * @throws IOException on error
+	 */
+	private void write(int count, int goal) throws IOException {
+
+		CounterJournal journal = new CounterJournal(path, FORCE_INTERVAL);
+		try {
+			for (int i = 1; i <= count; i++) journal.record(i, 0, goal);
+		}
+		finally {
+			journal.close();
+		}
+	}
+
+
+	/**
+	 * Overwrite a part of the record with the given sequence number, as if
+	 * the machine crashed while writing it
+	 *
+	 * @param sequence the sequence number
+	 * @param from the first byte within the record to overwrite
+	 * @param value the byte to write
+	 * @throws IOException on error
+	 */
+	private void tear(long sequence, int from, int value) throws IOException {
+
+		long offset = CounterJournal.HEADER_SIZE
+				+ ((sequence - 1) % CounterJournal.RECORDS) * CounterJournal.RECORD_SIZE;
+
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		try {
+			raf.seek(offset + from);
+			for (int i = from; i < CounterJournal.RECORD_SIZE; i++) raf.write(value);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * Recovering from a missing file
+	 */
+	@Test
+	public void testMissing() {
+		assertNull(CounterJournal.recover(path));
+	}
+
+
+	/**
+	 * Recovering the last record
+	 *
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testLast() throws IOException {
+
+		write(5, 100);
+
+		CounterJournal.Entry e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(5, e.getSequence());
+		assertEquals(5, e.getValue());
+		assertEquals(0, e.getStart());
+		assertEquals(100, e.getGoal());
+	}
+
+
+	/**
+	 * Recovering when the last record is torn, which must return the
+	 * record before it, with its value and goal
+	 *
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testTornLast() throws IOException {
+
+		write(5, 100);
+
+		CounterJournal journal = new CounterJournal(path, FORCE_INTERVAL);
+		journal.record(6, 0, 200);
+		journal.close();
+
+		// A record with only its first half written, and the rest garbage
+
+		tear(6, CounterJournal.RECORD_SIZE / 2, 0xA5);
+
+		CounterJournal.Entry e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(5, e.getSequence());
+		assertEquals(5, e.getValue());
+		assertEquals(100, e.getGoal());
+
+		// A record with only its sequence number written
+
+		tear(5, 8, 0);
+
+		e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(4, e.getValue());
+		assertEquals(100, e.getGoal());
+	}
+
+
+	/**
+	 * Reopening a journal with a torn last record, which must continue
+	 * after the last valid record
+	 *
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testReopenAfterTorn() throws IOException {
+
+		write(5, 100);
+		tear(5, 0, 0xFF);
+
+		CounterJournal journal = new CounterJournal(path, FORCE_INTERVAL);
+		journal.record(42, 0, 100);
+		journal.close();
+
+		CounterJournal.Entry e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(5, e.getSequence());
+		assertEquals(42, e.getValue());
+	}
+
+
+	/**
+	 * Recovering after the ring wrapped around, which must return the record
+	 * with the highest sequence number, not the one at the end of the file
+	 *
+	 * @throws IOException on error
+	 */
+	@Test
+	public void testWrapAround() throws IOException {
+
+		int count = CounterJournal.RECORDS * 2 + 10;
+		write(count, 100);
+
+		CounterJournal.Entry e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(count, e.getSequence());
+		assertEquals(count, e.getValue());
+
+		// The torn last record falls back to the previous slot in the ring
+
+		tear(count, CounterJournal.RECORD_SIZE / 2, 0);
+
+		e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(count - 1, e.getSequence());
+		assertEquals(count - 1, e.getValue());
+
+		// Reopening continues after the last valid record and wraps around
+		// again, so the newest record lies before older ones in the file
+
+		int more = CounterJournal.RECORDS - 11;
+		write(more, 100);
+
+		e = CounterJournal.recover(path);
+		assertNotNull(e);
+		assertEquals(count - 1 + more, e.getSequence());
+		assertEquals(more, e.getValue());
+	}
+}
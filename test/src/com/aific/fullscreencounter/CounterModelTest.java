@@ -0,0 +1,249 @@
+package com.aific.fullscreencounter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+/**
+ * Stress tests of the counter model under contention
+ *
+ * @author Peter Macko
+ */
+public class CounterModelTest {
+
+	/// The number of threads that update the counter at the same time
+	private static final int THREADS = 16;
+
+	/// The number of updates per thread
+	private static final int UPDATES = 50000;
+
+
+	/**
+	 * A body of a worker thread
+	 */
+	private interface Worker {
+
+		/**
+		 * Run the worker
+		 *
+		 * @param index the thread index
+		 * @param random the random number generator of the thread
+		 */
+		public void run(int index, Random random);
+	}
+
+
+	/**
+	 * Run the workers in parallel, starting them all at once, and rethrow
+	 * the first failure
+	 *
+	 * @param threads the number of threads
+	 * @param worker the worker
+	 * @throws Exception on failure
+	 */
+	private static void runParallel(int threads, final Worker worker) throws Exception {
+
+		final CyclicBarrier barrier = new CyclicBarrier(threads);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		ArrayList<Thread> list = new ArrayList<Thread>();
+
+		for (int i = 0; i < threads; i++) {
+			final int index = i;
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						worker.run(index, new Random(index));
+					}
+					catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			t.start();
+			list.add(t);
+		}
+
+		for (Thread t : list) t.join();
+
+		if (failure.get() instanceof Exception) throw (Exception) failure.get();
+		if (failure.get() != null) throw new AssertionError(failure.get());
+	}
+
+
+	/**
+	 * Increments and decrements that never reach zero are all applied
+	 * exactly, and each of them is one version
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testConcurrentIncrementsAndDecrements() throws Exception {
+
+		final long start = 1000000000L;
+		final CounterModel model = new CounterModel(start);
+		final AtomicLong expected = new AtomicLong(start);
+
+		runParallel(THREADS, new Worker() {
+			@Override
+			public void run(int index, Random random) {
+				long sum = 0;
+				for (int i = 0; i < UPDATES; i++) {
+					int n = 1 + random.nextInt(5);
+					if (random.nextBoolean()) {
+						model.increment(n);
+						sum += n;
+					}
+					else {
+						model.decrement(n);
+						sum -= n;
+					}
+				}
+				expected.addAndGet(sum);
+			}
+		});
+
+		CounterModel.Snapshot s = model.snapshot();
+		assertEquals(expected.get(), model.get());
+		assertEquals(expected.get(), s.getValue());
+		assertEquals((long) THREADS * UPDATES, s.getVersion());
+	}
+
+
+	/**
+	 * Concurrent decrements stop at zero, and the decrements at zero do not
+	 * count as updates
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testFloorAtZero() throws Exception {
+
+		final int start = THREADS * UPDATES / 3;
+		final CounterModel model = new CounterModel(start);
+
+		runParallel(THREADS, new Worker() {
+			@Override
+			public void run(int index, Random random) {
+				for (int i = 0; i < UPDATES; i++) {
+					model.decrement();
+				}
+			}
+		});
+
+		CounterModel.Snapshot s = model.snapshot();
+		assertEquals(0, model.get());
+		assertEquals(0, s.getValue());
+		assertEquals(start, s.getVersion());
+
+		model.decrement(10);
+		assertEquals(0, model.get());
+		assertTrue(model.snapshot() == s);
+	}
+
+
+	/**
+	 * Under a mix of all updates, the readers never see a negative value or
+	 * a version going back, and the value stays within the bounds given by
+	 * the increments and the decrements
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testMixedUpdatesWithReaders() throws Exception {
+
+		final CounterModel model = new CounterModel(0);
+		final AtomicInteger writers = new AtomicInteger(THREADS);
+		final AtomicLong increments = new AtomicLong();
+		final int readers = 2;
+
+		runParallel(THREADS + readers, new Worker() {
+			@Override
+			public void run(int index, Random random) {
+
+				if (index >= THREADS) {
+					long version = -1;
+					while (writers.get() > 0) {
+						CounterModel.Snapshot s = model.snapshot();
+						assertTrue("Negative value " + s.getValue(), s.getValue() >= 0);
+						assertTrue("Version went back", s.getVersion() >= version);
+						assertTrue(model.get() >= 0);
+						version = s.getVersion();
+					}
+					return;
+				}
+
+				try {
+					for (int i = 0; i < UPDATES; i++) {
+						int op = random.nextInt(100);
+						if (op < 50) {
+							model.increment();
+							increments.incrementAndGet();
+						}
+						else if (op < 99) {
+							model.decrement(1 + random.nextInt(3));
+						}
+						else {
+							model.set(random.nextInt(10));
+						}
+					}
+				}
+				finally {
+					writers.decrementAndGet();
+				}
+			}
+		});
+
+		long value = model.get();
+		assertTrue(value >= 0);
+		assertTrue(value <= 10 + increments.get());
+
+		model.set(42);
+		assertEquals(42, model.get());
+		assertEquals(42, model.snapshot().getValue());
+	}
+
+
+	/**
+	 * A burst of updates notifies the listeners only once until the next
+	 * snapshot
+	 *
+	 * @throws Exception on failure
+	 */
+	@Test
+	public void testListenerCoalescing() throws Exception {
+
+		final CounterModel model = new CounterModel(0);
+		final AtomicLong notifications = new AtomicLong();
+
+		model.addListener(new CounterModel.Listener() {
+			@Override
+			public void counterChanged(CounterModel m) {
+				notifications.incrementAndGet();
+			}
+		});
+
+		runParallel(THREADS, new Worker() {
+			@Override
+			public void run(int index, Random random) {
+				for (int i = 0; i < 1000; i++) model.increment();
+			}
+		});
+
+		assertEquals(1, notifications.get());
+		assertEquals(THREADS * 1000, model.snapshot().getValue());
+
+		model.increment();
+		assertEquals(2, notifications.get());
+	}
+}